@@ -0,0 +1,367 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+import org.sonatype.appbooter.PlexusContainerHost;
+import org.sonatype.appbooter.ctl.ControllerClient;
+
+/**
+ * Starts the application of the current project: the parameters, and the launch, scan and budget logic of plx:run.
+ * This class has no goal or lifecycle tags, since the descriptor extractor inherits class-level tags from superclasses.
+ * Goals that must not fork the test lifecycle, such as plx:quick-run and plx:stress, extend this class rather than
+ * {@link PlexusRunMojo}.
+ */
+public abstract class AbstractPlexusProjectRunMojo
+    extends AbstractPlexusRunMojo
+{
+    // ------------------------------------------------------------------------
+    // Maven Parameters
+    // ------------------------------------------------------------------------
+
+    /**
+     * If true, do NOT wait for CTL-C to terminate the application, just start it and return. Future calls to plx:stop
+     * or direct use of the {@link ControllerClient} API can manage the application once started.
+     * 
+     * @parameter default-value="false" expression="${plx.disableBlocking}"
+     */
+    private boolean disableBlocking;
+
+    /**
+     * When greater than zero (and <code>disableBlocking</code> is false), check the classes, test classes (with
+     * <code>includeTestClasspath</code>), plexus configuration and the realm's jars for changes every
+     * <code>scanIntervalSeconds</code>, and restart the application when something changed. The platform and the realm
+     * are resolved only once, on the first start, and only rebuilt when their files change.
+     * 
+     * @parameter default-value="0" expression="${plx.scanIntervalSeconds}"
+     */
+    private int scanIntervalSeconds;
+
+    /**
+     * Substitutes the given port into the expression '@DEBUG_PORT@' in your debugJavaCmd.
+     * 
+     * @parameter default-value="5005" expression="${plx.debugPort}"
+     */
+    private int debugPort;
+
+    /** @parameter expression="${project}" */
+    private MavenProject project;
+
+    /** @parameter expression="${configuration}" default-value="${basedir}/src/main/plexus/plexus.xml" */
+    private File configuration;
+
+    /** @parameter expression="${basedir}" */
+    private File basedir;
+
+    /**
+     * @parameter default-value="${project.build.directory}"
+     */
+    private File targetDir;
+
+    /** @parameter expression="${project.build.outputDirectory}" */
+    private File classes;
+
+    /** @parameter expression="${project.build.testOutputDirectory}" */
+    private File testClasses;
+
+    /**
+     * Uses DEFAULT_CONTROL_PORT from {@link PlexusContainerHost} by default. <br/> This is the port used to administer
+     * the remote application. If you execute with disableBlocking == true, you may need to know this port to use the
+     * {@link ControllerClient} API directly (from integration-test JUnit code, for instance).
+     * 
+     * @parameter expression="${plx.controlPort}" default-value="-1"
+     */
+    private int controlPort;
+
+    public void execute()
+        throws MojoExecutionException, MojoFailureException
+    {
+        AppInstance instance = createInstance();
+        boolean scanning = scanIntervalSeconds > 0 && !disableBlocking;
+
+        if ( hasBudgets() && !disableBlocking && !scanning )
+        {
+            getLog().warn( "Budgets are only checked with disableBlocking or scanIntervalSeconds; ignoring them." );
+        }
+
+        recordLifecycleTime( instance );
+        launch( instance, disableBlocking || scanning );
+
+        if ( disableBlocking || scanning )
+        {
+            try
+            {
+                checkBudgets( instance );
+            }
+            catch ( MojoFailureException e )
+            {
+                shutdownForkedApp( instance );
+                throw e;
+            }
+        }
+
+        if ( disableBlocking )
+        {
+            InstanceRegistry registry = new InstanceRegistry();
+            registry.add( createRegistryEntry( instance ) );
+            writeRegistry( registry );
+        }
+
+        if ( scanning )
+        {
+            scanAndRestart( instance );
+        }
+    }
+
+    /**
+     * @return the instance described by this mojo's configuration.
+     */
+    @SuppressWarnings( "unchecked" )
+    protected AppInstance createInstance()
+        throws MojoExecutionException
+    {
+        AppInstance instance = new AppInstance();
+        instance.setId( project.getId() );
+        instance.setBasedir( basedir );
+        instance.setConfiguration( configuration );
+        instance.setTargetDir( targetDir );
+        instance.setClasses( classes );
+        instance.setTestClasses( testClasses );
+        instance.setArtifacts( (List<Artifact>) project.getTestArtifacts() );
+        instance.setManagedVersionMap( project.getManagedVersionMap() );
+        instance.setControlPort( controlPort > -1 ? controlPort : PlexusContainerHost.DEFAULT_CONTROL_PORT );
+        instance.setDebugPort( debugPort );
+        assignMetricsPort( instance, new PortAllocator(), true );
+        return instance;
+    }
+
+    private void launch( AppInstance instance, boolean returnAfterStart )
+        throws MojoExecutionException, MojoFailureException
+    {
+        startBooter( instance, createBooter( instance, returnAfterStart ) );
+
+        if ( !returnAfterStart )
+        {
+            return;
+        }
+
+        if ( isWaitForReady() )
+        {
+            awaitReadiness( instance, createReadinessProbe( instance ) );
+        }
+
+        reportStartup( instance );
+    }
+
+    /**
+     * Watch the application's classes and configuration, and restart the forked application whenever they change.
+     * Runs until the Maven process is interrupted (Ctl-C), at which point the application is shut down as well. A
+     * restart that fails (a compile error mid-edit, a component that won't start) is logged and scanning goes on, so
+     * the next change gets another restart.
+     */
+    private void scanAndRestart( final AppInstance instance )
+        throws MojoExecutionException, MojoFailureException
+    {
+        List<File> platformFiles = getPlatformFiles( instance );
+        List<File> dependencyFiles = getDependencyFiles( instance );
+        ChangeScanner scanner = createScanner( platformFiles, dependencyFiles );
+
+        Runtime.getRuntime().addShutdownHook( new Thread( "plx-shutdown" )
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    shutdownForkedApp( instance );
+                }
+                catch ( MojoExecutionException e )
+                {
+                    // the application is already gone.
+                }
+            }
+        } );
+
+        getLog().info( "Scanning for changes every " + scanIntervalSeconds + "s. Press Ctl-C to stop." );
+        while ( true )
+        {
+            try
+            {
+                Thread.sleep( scanIntervalSeconds * 1000L );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            List<String> changed = scanner.scan();
+            if ( changed.isEmpty() )
+            {
+                continue;
+            }
+
+            List<String> platformChanges = getChangesBelow( changed, platformFiles );
+            List<String> realmChanges = getChangesBelow( changed, dependencyFiles );
+
+            if ( !platformChanges.isEmpty() )
+            {
+                getLog().info( "Platform or prepended class path changed; restarting plexus application with a "
+                    + "fresh platform and realm:" );
+                logPaths( platformChanges );
+                invalidateRealm( instance, true );
+            }
+            else if ( !realmChanges.isEmpty() )
+            {
+                // the appbooter host can't swap realm entries of a running container, so this still re-forks.
+                getLog().info( "Realm entries changed; restarting plexus application with a rebuilt realm, "
+                    + "keeping the platform:" );
+                logPaths( realmChanges );
+                invalidateRealm( instance, false );
+            }
+            else
+            {
+                getLog().info( "Detected " + changed.size() + " changed file(s); restarting plexus application." );
+                if ( outputDebugMessages() )
+                {
+                    logPaths( changed );
+                }
+            }
+
+            long start = System.currentTimeMillis();
+            try
+            {
+                shutdownForkedApp( instance );
+            }
+            catch ( MojoExecutionException e )
+            {
+                // most likely the previous restart failed and nothing is listening; start a new one regardless.
+                getLog().warn( "Failed to stop plexus application before restarting it: " + e.getMessage() );
+            }
+
+            try
+            {
+                instance.setTimeline( new StartupTimeline() );
+                launch( instance, true );
+                getLog().info( "Plexus application restarted in " + ( System.currentTimeMillis() - start ) + "ms." );
+
+                // a platform of another version, or re-resolved artifacts, live at other paths.
+                List<File> newPlatformFiles = getPlatformFiles( instance );
+                List<File> newDependencyFiles = getDependencyFiles( instance );
+                if ( !newPlatformFiles.equals( platformFiles ) || !newDependencyFiles.equals( dependencyFiles ) )
+                {
+                    platformFiles = newPlatformFiles;
+                    dependencyFiles = newDependencyFiles;
+                    scanner = createScanner( platformFiles, dependencyFiles );
+                }
+            }
+            catch ( MojoExecutionException e )
+            {
+                logRestartFailure( e );
+            }
+            catch ( MojoFailureException e )
+            {
+                logRestartFailure( e );
+            }
+        }
+    }
+
+    private void logRestartFailure( Exception e )
+    {
+        getLog().error( "Failed to restart plexus application; waiting for the next change to try again.", e );
+    }
+
+    /**
+     * @return a scanner for the application's classes and configuration, and the given platform and dependency files,
+     *         with their current state recorded.
+     */
+    private ChangeScanner createScanner( List<File> platformFiles, List<File> dependencyFiles )
+    {
+        ChangeScanner scanner = new ChangeScanner();
+        scanner.addRoot( classes );
+        if ( isIncludeTestClasspath() )
+        {
+            // test classes only matter to the application when they are on its realm.
+            scanner.addRoot( testClasses );
+        }
+        scanner.addRoot( configuration );
+
+        // rebuilt sibling module jars and a changed platform need a restart as much as changed classes do.
+        for ( File file : platformFiles )
+        {
+            scanner.addRoot( file );
+        }
+        for ( File file : dependencyFiles )
+        {
+            scanner.addRoot( file );
+        }
+
+        scanner.reset();
+        return scanner;
+    }
+
+    /**
+     * @return the changed paths that are one of, or below one of, the given files.
+     */
+    private static List<String> getChangesBelow( List<String> changed, List<File> files )
+    {
+        List<String> result = new ArrayList<String>();
+        for ( String path : changed )
+        {
+            for ( File file : files )
+            {
+                String root = file.getAbsolutePath();
+                if ( path.equals( root ) || path.startsWith( root + File.separator ) )
+                {
+                    result.add( path );
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private void logPaths( List<String> paths )
+    {
+        for ( String path : paths )
+        {
+            getLog().info( "  " + path );
+        }
+    }
+
+    protected MavenProject getProject()
+    {
+        return project;
+    }
+
+    protected File getClasses()
+    {
+        return classes;
+    }
+
+    protected File getTestClasses()
+    {
+        return testClasses;
+    }
+
+}
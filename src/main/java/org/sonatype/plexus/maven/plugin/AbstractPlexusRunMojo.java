@@ -0,0 +1,1567 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.Mojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.PlexusConstants;
+import org.codehaus.plexus.PlexusContainer;
+import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
+import org.codehaus.plexus.context.Context;
+import org.codehaus.plexus.context.ContextException;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.LoggerManager;
+import org.codehaus.plexus.personality.plexus.lifecycle.phase.Contextualizable;
+import org.codehaus.plexus.util.StringUtils;
+import org.sonatype.appbooter.ForkedAppBooter;
+import org.sonatype.appbooter.ctl.AppBooterServiceException;
+import org.sonatype.appbooter.ctl.ControllerClient;
+import org.sonatype.plexus.classworlds.model.ClassworldsRealmConfiguration;
+
+/**
+ * Configuration and launch logic shared by the mojos that fork Plexus applications. Everything that differs between
+ * two launched applications is carried by an {@link AppInstance}.
+ */
+public abstract class AbstractPlexusRunMojo
+    implements Mojo, Contextualizable /* , Service */
+{
+    private static final String REALM_CACHE_DIR = "plx-cache";
+
+    private static final String CDS_DIR = "plx-cds";
+
+    private static final String STARTUP_REPORT = "plx-startup.json";
+
+    private static final String OUTPUT_LOG = "plx-output.log";
+
+    private static final String OUTPUT_SPILL = "plx-output.spill";
+
+    private static final String PID_FILE = "plx.pid";
+
+    private static final long SHUTDOWN_TIMEOUT = 30000;
+
+    private static final int METRICS_TIMEOUT = 10000;
+
+    private static final long MB = 1024 * 1024;
+
+    // ------------------------------------------------------------------------
+    // Maven Parameters
+    // ------------------------------------------------------------------------
+
+    /**
+     * If <code>disableBlocking</code> is true <code>sleepAfterStart</code> is the number of milliseconds to wait
+     * for the application to start up.
+     *
+     * @parameter default-value="5000" expression="${plx.sleepAfterStart}"
+     */
+    private int sleepAfterStart;
+
+    /**
+     * If <code>disableBlocking</code> is true, actively poll the application until it is ready instead of waiting a
+     * fixed <code>sleepAfterStart</code>. Readiness is reached once the control port accepts connections, and then
+     * <code>readinessPort</code> and <code>readinessUrl</code> (when configured) respond.
+     *
+     * @parameter default-value="false" expression="${plx.waitForReady}"
+     */
+    private boolean waitForReady;
+
+    /**
+     * Maximum number of milliseconds to wait for the application to become ready when <code>waitForReady</code> is
+     * true. The build fails if the application is not ready in time.
+     *
+     * @parameter default-value="60000" expression="${plx.readinessTimeout}"
+     */
+    private int readinessTimeout;
+
+    /**
+     * Optional TCP port (on localhost) that must accept connections before the application is considered ready. Not
+     * used by plx:run-all: the first application to bind the port would make every other one look ready.
+     *
+     * @parameter default-value="-1" expression="${plx.readinessPort}"
+     */
+    private int readinessPort;
+
+    /**
+     * Optional URL that must answer with a non-error response before the application is considered ready. Not used by
+     * plx:run-all, for the same reason as <code>readinessPort</code>.
+     *
+     * @parameter expression="${plx.readinessUrl}"
+     */
+    private URL readinessUrl;
+
+    /**
+     * Turns on debug mode, which uses the debugJavaCmd to start the plexus application instead of the normal javaCmd.
+     *
+     * @parameter default-value="false" expression="${plx.debug}"
+     */
+    private boolean debug;
+
+    /**
+     * Output diagnostic information for the command line and classworlds configuration file generated by this mojo in
+     * order to start the application.
+     *
+     * @parameter default-value="false" expression="${plx.debugOutput}"
+     */
+    private boolean debugOutput;
+
+    /**
+     * Java command used to start the Plexus application under normal (non-debug) circumstances.
+     *
+     * @parameter default-value="java"
+     */
+    private String javaCmd;
+
+    /**
+     * Substitutes 'y' or 'n' into the expression '@DEBUG_SUSPEND@' in your debugJavaCmd.
+     *
+     * @parameter default-value="true" expression="${plx.debugSuspend}"
+     */
+    private boolean debugSuspend;
+
+    /**
+     * Java command used to start the Plexus application into debugging mode, which is meant to allow attachment of a
+     * remote application debugger via JPDA, etc.
+     *
+     * @parameter default-value="java -agentlib:jdwp=transport=dt_socket,server=y,suspend=@DEBUG_SUSPEND@,address=@DEBUG_PORT@"  expression="${plx.debugJavaCmd}"
+     */
+    private String debugJavaCmd;
+
+    /**
+     * Id of the {@link LaunchProfile} to start the application with: <code>dev-fast-start</code>,
+     * <code>debug-with-jit</code>, <code>throughput</code>, or one configured in <code>launchProfiles</code>. The
+     * profile's JVM options are added to <code>javaCmd</code>, and its system properties are merged with
+     * <code>systemProperties</code>. In debug mode, <code>javaCmd</code> plus the profile's options plus a
+     * <code>-agentlib:jdwp</code> agent replaces <code>debugJavaCmd</code>.
+     *
+     * @parameter expression="${plx.launchProfile}"
+     */
+    private String launchProfile;
+
+    /**
+     * Additional launch profiles, each with an <code>id</code>, <code>jvmOptions</code>, <code>debug</code> flag and
+     * <code>systemProperties</code>. A profile with the id of a built-in one replaces it.
+     *
+     * @parameter
+     */
+    private List<LaunchProfile> launchProfiles;
+
+    /**
+     * The class containing the main method that will be used to start up the Plexus container to initialize the
+     * application. <br/> CAUTION! Be sure you understand the ramifications before changing this!
+     *
+     * @parameter default-value="org.sonatype.appbooter.PlexusContainerHost"
+     */
+    private String launcherClass;
+
+    /**
+     * System properties passed on to the new java process.
+     *
+     * @parameter
+     */
+    private Map<String, String> systemProperties;
+
+    /** @parameter default-value="false" */
+    private boolean includeTestClasspath;
+
+    /**
+     * Artifact coordinate containing the platform classes for the application. These should include a plexus container,
+     * along with the launcherClass. <br/> Default is
+     * org.sonatype.appbooter.plexus-platforms:plexus-platform-base:1.0-SNAPSHOT
+     *
+     * @parameter
+     */
+    private PlatformArtifact platformArtifact = PlatformArtifact.DEFAULT;
+
+    /**
+     * Keep a verified copy of the resolved platform jar in <code>platformCacheDirectory</code>, so later runs start
+     * from it without going through artifact resolution. The copy is checked against the local repository file on
+     * every run, so a newly installed platform is used right away.
+     *
+     * @parameter default-value="true" expression="${plx.usePlatformCache}"
+     */
+    private boolean usePlatformCache;
+
+    /**
+     * Directory holding cached platform jars and their checksum manifests. It is shared by all projects.
+     *
+     * @parameter default-value="${user.home}/.m2/plx-platform-cache" expression="${plx.platformCacheDirectory}"
+     */
+    private File platformCacheDirectory;
+
+    /**
+     * Number of milliseconds after which a cached SNAPSHOT platform is resolved again, checking the remote repositories
+     * for a newer one. Release platforms are never re-validated.
+     *
+     * @parameter default-value="86400000" expression="${plx.platformCacheRevalidateInterval}"
+     */
+    private long platformCacheRevalidateInterval;
+
+    /**
+     * Never resolve the platform artifact; only use the verified copy in the platform cache, and fail if there is
+     * none.
+     *
+     * @parameter default-value="false" expression="${plx.platformOffline}"
+     */
+    private boolean platformOffline;
+
+    /**
+     * List of class paths to prepend to the classworlds configuration.
+     *
+     * @parameter
+     */
+    private List<String> prependClasspaths;
+
+    /**
+     * Check the realm's artifact files before forking: missing files are resolved again, and files that are not valid
+     * jars fail the build. Jars are checked in parallel, and each only once per build unless it changes.
+     *
+     * @parameter default-value="true" expression="${plx.verifyRealm}"
+     */
+    private boolean verifyRealm;
+
+    /**
+     * When verifying the realm, also compare each jar with the <code>.sha1</code> file next to it in the local
+     * repository.
+     *
+     * @parameter default-value="false" expression="${plx.verifyChecksums}"
+     */
+    private boolean verifyChecksums;
+
+    /**
+     * Index the classes of all realm entries and warn about entries that provide the same classes again (duplicate
+     * versions, relocated or shaded copies), with the packages involved. The index is kept in
+     * <code>${project.build.directory}/plx-cache</code> and rebuilt only when the realm entries, or the files in its
+     * class directories, change.
+     *
+     * @parameter default-value="false" expression="${plx.analyzeRealm}"
+     */
+    private boolean analyzeRealm;
+
+    /**
+     * With <code>analyzeRealm</code>, leave jars out of the realm when everything they contain is provided by earlier
+     * entries, since the application can't load anything from them anyway.
+     *
+     * @parameter default-value="false" expression="${plx.dropShadowedJars}"
+     */
+    private boolean dropShadowedJars;
+
+    /**
+     * Pass the realm to the forked application as a single manifest-only jar, whose <code>Class-Path</code> lists all
+     * realm entries, instead of one entry per dependency. This keeps the generated classworlds configuration and the
+     * command line short for projects with many dependencies. The jar is kept in
+     * <code>${project.build.directory}/plx-cache</code> and reused while it lists the same entries.
+     *
+     * @parameter default-value="false" expression="${plx.usePathingJar}"
+     */
+    private boolean usePathingJar;
+
+    /**
+     * Start the application with a dynamic class data sharing archive of the classes it loads, kept in
+     * <code>${project.build.directory}/plx-cds</code>. The first launch for a given classpath runs without it, to
+     * measure the startup time to compare against. The second is a training run that writes the archive when the
+     * application exits cleanly. Later launches with the same classpath map it, which saves most of the class loading
+     * and verification at startup. Requires the forked JVM to be Java 13 or newer.
+     *
+     * @parameter default-value="false" expression="${plx.classDataSharing}"
+     */
+    private boolean classDataSharing;
+
+    /**
+     * Decouple the application's stdout and stderr from the Maven console: the forked JVM queues output lines in a
+     * bounded buffer that a background thread writes out, so a chatty application never blocks on a full pipe. See
+     * <code>outputBufferLines</code> and <code>outputOverflow</code>.
+     *
+     * @parameter default-value="false" expression="${plx.outputCapture}"
+     */
+    private boolean outputCapture;
+
+    /**
+     * Number of output lines buffered per stream when <code>outputCapture</code> is enabled; at least 1. Lines longer
+     * than 8192 bytes take one buffer slot per 8192 bytes. The <code>spill</code> policy buffers as many lines again
+     * on their way to the spill file.
+     *
+     * @parameter default-value="10000" expression="${plx.outputBufferLines}"
+     */
+    private int outputBufferLines;
+
+    /**
+     * What to do with output lines when the buffer is full: <code>drop</code> them, <code>sample</code> them (keep
+     * every tenth line once the buffer is three quarters full), or <code>spill</code> them to
+     * <code>${project.build.directory}/plx-output.spill</code>. Dropped and spilled lines are counted and reported when
+     * the application exits.
+     *
+     * @parameter default-value="drop" expression="${plx.outputOverflow}"
+     */
+    private String outputOverflow;
+
+    /**
+     * Also write all captured output to <code>${project.build.directory}/plx-output.log</code>, rolling it over
+     * according to <code>outputMaxFileSize</code>, <code>outputMaxFiles</code> and <code>outputRollInterval</code>.
+     *
+     * @parameter default-value="false" expression="${plx.outputLog}"
+     */
+    private boolean outputLog;
+
+    /**
+     * Size in bytes after which the output log is rolled over; 0 disables size-based rolling.
+     *
+     * @parameter default-value="10485760" expression="${plx.outputMaxFileSize}"
+     */
+    private long outputMaxFileSize;
+
+    /**
+     * Number of rolled-over output logs to keep.
+     *
+     * @parameter default-value="5" expression="${plx.outputMaxFiles}"
+     */
+    private int outputMaxFiles;
+
+    /**
+     * Number of milliseconds after which the output log is rolled over; 0 disables time-based rolling.
+     *
+     * @parameter default-value="0" expression="${plx.outputRollInterval}"
+     */
+    private long outputRollInterval;
+
+    /**
+     * Start the application through a small launcher that writes its process id to
+     * <code>${project.build.directory}/plx.pid</code>, so plx:stop can confirm the process exited and, with
+     * <code>forceKill</code>, kill it if it doesn't. The launcher runs from the plugin jar, which is added to the front
+     * of the application realm. It also passes a random launch token on the command line, so plx:stop can tell the
+     * application from an unrelated process that reused its process id.
+     *
+     * @parameter default-value="false" expression="${plx.writePidFile}"
+     */
+    private boolean writePidFile;
+
+    /**
+     * Serve runtime metrics (heap, garbage collection, threads, loaded classes, uptime and resident set size) from the
+     * forked application on a local port, for plx:status. -1 disables the metrics port, 0 picks a free port. plx:run-all
+     * always picks free ports. The port is recorded in the instance registry.
+     *
+     * @parameter default-value="-1" expression="${plx.metricsPort}"
+     */
+    private int metricsPort;
+
+    /**
+     * Fail the build if the application takes longer than this many milliseconds from fork to ready. -1 disables the
+     * budget. Budgets are checked once the application is ready, so they need <code>disableBlocking</code> (plx:run)
+     * or plx:run-all.
+     *
+     * @parameter default-value="-1" expression="${plx.maxReadyMillis}"
+     */
+    private long maxReadyMillis;
+
+    /**
+     * Fail the build if the application uses more than this many MB of heap once ready, measured after a full garbage
+     * collection. -1 disables the budget.
+     *
+     * @parameter default-value="-1" expression="${plx.maxHeapMb}"
+     */
+    private long maxHeapMb;
+
+    /**
+     * Fail the build if the application has loaded more than this many classes once ready. -1 disables the budget.
+     *
+     * @parameter default-value="-1" expression="${plx.maxLoadedClasses}"
+     */
+    private long maxLoadedClasses;
+
+    /**
+     * Fail the build if the application's resident set size is more than this many MB once ready. Only measured on
+     * Linux. -1 disables the budget.
+     *
+     * @parameter default-value="-1" expression="${plx.maxRssMb}"
+     */
+    private long maxRssMb;
+
+    /**
+     * File listing the id, ports and process id file of every application started without blocking. plx:stop reads it
+     * to shut all of them down again.
+     *
+     * @parameter default-value="${project.build.directory}/plx-instances.properties" expression="${plx.registryFile}"
+     */
+    private File registryFile;
+
+    /**
+     * Write the duration of each startup phase (time spent in Maven before this goal, platform resolution, realm
+     * generation, process fork, and waiting for readiness) as JSON to
+     * <code>${project.build.directory}/plx-startup.json</code> once the application has started.
+     *
+     * @parameter default-value="true" expression="${plx.startupReport}"
+     */
+    private boolean startupReport;
+
+    /**
+     * Also log the startup phase durations as a single line.
+     *
+     * @parameter default-value="false" expression="${plx.startupSummary}"
+     */
+    private boolean startupSummary;
+
+    /**
+     * @parameter expression="${session}"
+     * @readonly
+     */
+    private MavenSession session;
+
+    /**
+     * @component
+     */
+    private ArtifactResolver resolver;
+
+    /**
+     * @component
+     */
+    private ArtifactFactory factory;
+
+    /**
+     * @parameter default-value="${localRepository}"
+     * @readonly
+     */
+    private ArtifactRepository localRepository;
+
+    /**
+     * @parameter default-value="${project.remoteArtifactRepositories}"
+     * @readonly
+     */
+    private List<ArtifactRepository> remoteRepositories;
+
+    private ControllerClient controlClient;
+
+    private Log log;
+
+    private PlexusContainer container;
+
+    /**
+     * Create a booter for the instance, resolving its platform and realm on first use. Restarts of the same instance
+     * reuse both.
+     *
+     * @param returnAfterStart if false, {@link #startBooter(AppInstance, MavenForkedAppBooter)} blocks until the
+     *            application is stopped.
+     */
+    protected MavenForkedAppBooter createBooter( AppInstance instance, boolean returnAfterStart )
+        throws MojoExecutionException, MojoFailureException
+    {
+        // it would be WAY better to get this from a container already configured, but its really a pain to push the
+        // config values back into it. It makes the complexity of the code grow.... so what I did, is added setters and
+        // getters to the component....
+        MavenForkedAppBooter mavenForkedAppBooter = new MavenForkedAppBooter();
+
+        // grab the logger..
+        try
+        {
+            LoggerManager lm = (LoggerManager) this.container.lookup( LoggerManager.ROLE );
+            Logger logger = lm.getLoggerForComponent( ForkedAppBooter.ROLE );
+            mavenForkedAppBooter.enableLogging( logger );
+        }
+        catch ( ComponentLookupException e )
+        {
+            throw new MojoExecutionException( "Failed to pass a logger to the Plexus Component: "+ e.getMessage(), e );
+        }
+
+        instance.setPidFile( writePidFile ? new File( instance.getTargetDir(), PID_FILE ) : null );
+
+        // configure it...
+        long start = System.currentTimeMillis();
+        if ( verifyRealm )
+        {
+            verifyRealmArtifacts( instance );
+            instance.getTimeline().record( "verify", start );
+        }
+
+        start = System.currentTimeMillis();
+        mavenForkedAppBooter.setPlatformFile( this.getPlatformFile( instance ) );
+        instance.getTimeline().record( "platform", start );
+
+        start = System.currentTimeMillis();
+        mavenForkedAppBooter.setClassworldsRealmConfig( this.getClassworldsRealmConfig( instance ) );
+        instance.getTimeline().record( "realm", start );
+
+        // prepares the class data sharing archive, so only once per launch.
+        String extraJvmOptions = getExtraJvmOptions( instance );
+
+        mavenForkedAppBooter.setBasedir( instance.getBasedir() );
+        mavenForkedAppBooter.setConfiguration( instance.getConfiguration() );
+        mavenForkedAppBooter.setControlClient( this.controlClient );
+        mavenForkedAppBooter.setControlPort( instance.getControlPort() );
+        mavenForkedAppBooter.setDebug( isDebug() );
+        mavenForkedAppBooter.setDebugJavaCmd( getDebugJavaCmd() + extraJvmOptions );
+        mavenForkedAppBooter.setDebugPort( instance.getDebugPort() );
+        mavenForkedAppBooter.setDebugSuspend( this.debugSuspend );
+        mavenForkedAppBooter.setJavaCmd( getJavaCmd() + extraJvmOptions );
+        mavenForkedAppBooter.setLauncherClass( useLauncherWrapper() ? ForkedAppLauncher.class.getName()
+                        : this.launcherClass );
+        mavenForkedAppBooter.setSleepAfterStart( returnAfterStart && isWaitForReady() ? 0 : this.sleepAfterStart );
+        mavenForkedAppBooter.setSystemProperties( this.getForkedSystemProperties( instance ) );
+        mavenForkedAppBooter.setTempDir( instance.getTargetDir() );
+        mavenForkedAppBooter.setDisableBlocking( returnAfterStart );
+
+        return mavenForkedAppBooter;
+    }
+
+    /**
+     * @return the selected launch profile, or null if none is selected.
+     */
+    protected LaunchProfile getLaunchProfile()
+        throws MojoExecutionException
+    {
+        if ( launchProfile == null || launchProfile.length() == 0 )
+        {
+            return null;
+        }
+
+        LaunchProfile profile = LaunchProfile.find( launchProfile, launchProfiles );
+        if ( profile == null )
+        {
+            throw new MojoExecutionException( "Unknown launch profile: '" + launchProfile
+                + "'; expected dev-fast-start, debug-with-jit, throughput, or one configured in launchProfiles." );
+        }
+        return profile;
+    }
+
+    private String getJavaCmd()
+        throws MojoExecutionException
+    {
+        LaunchProfile profile = getLaunchProfile();
+        if ( profile == null || profile.getJvmOptions() == null )
+        {
+            return this.javaCmd;
+        }
+        return this.javaCmd + " " + profile.getJvmOptions().trim();
+    }
+
+    private String getDebugJavaCmd()
+        throws MojoExecutionException
+    {
+        if ( getLaunchProfile() == null )
+        {
+            return this.debugJavaCmd;
+        }
+        return getJavaCmd() + " " + LaunchProfile.DEBUG_AGENT;
+    }
+
+    /**
+     * @return the system properties of the launch profile, overridden by the configured ones.
+     */
+    private Map<String, String> getSystemProperties()
+        throws MojoExecutionException
+    {
+        LaunchProfile profile = getLaunchProfile();
+        if ( profile == null )
+        {
+            return this.systemProperties;
+        }
+
+        Map<String, String> props = new LinkedHashMap<String, String>( profile.getSystemProperties() );
+        if ( this.systemProperties != null )
+        {
+            props.putAll( this.systemProperties );
+        }
+        return props;
+    }
+
+    /**
+     * @return true if the forked JVM needs {@link ForkedAppLauncher} to set it up before the launcher class runs.
+     */
+    protected boolean useLauncherWrapper()
+    {
+        return outputCapture || writePidFile || metricsPort > -1 || hasMetricsBudget() || classDataSharing;
+    }
+
+    /**
+     * @return true if any startup or memory budget is configured.
+     */
+    protected boolean hasBudgets()
+    {
+        return maxReadyMillis > -1 || hasMetricsBudget();
+    }
+
+    private boolean hasMetricsBudget()
+    {
+        return maxHeapMb > -1 || maxLoadedClasses > -1 || maxRssMb > -1;
+    }
+
+    /**
+     * Give the instance its metrics port, if metrics are enabled.
+     *
+     * @param ports used to pick a free port, unless a fixed one is configured and <code>allowFixed</code> is true.
+     */
+    protected void assignMetricsPort( AppInstance instance, PortAllocator ports, boolean allowFixed )
+        throws MojoExecutionException
+    {
+        if ( metricsPort < 0 && !hasMetricsBudget() )
+        {
+            instance.setMetricsPort( -1 );
+        }
+        else if ( metricsPort > 0 && allowFixed )
+        {
+            instance.setMetricsPort( metricsPort );
+        }
+        else
+        {
+            try
+            {
+                instance.setMetricsPort( ports.allocate() );
+            }
+            catch ( IOException e )
+            {
+                throw new MojoExecutionException( "Failed to allocate a metrics port for: " + instance.getId(), e );
+            }
+        }
+
+        if ( instance.getMetricsPort() > -1 )
+        {
+            getLog().info( "Serving runtime metrics of " + instance.getId() + " on port " + instance.getMetricsPort() );
+        }
+    }
+
+    /**
+     * @return the configured and launch profile system properties, plus those configuring {@link ForkedAppLauncher}.
+     */
+    private Map<String, String> getForkedSystemProperties( AppInstance instance )
+        throws MojoExecutionException
+    {
+        Map<String, String> configured = getSystemProperties();
+        if ( !useLauncherWrapper() )
+        {
+            return configured;
+        }
+
+        Map<String, String> props = new LinkedHashMap<String, String>();
+        if ( configured != null )
+        {
+            props.putAll( configured );
+        }
+        props.put( ForkedAppLauncher.DELEGATE, this.launcherClass );
+
+        if ( instance.getPidFile() != null )
+        {
+            props.put( ForkedAppLauncher.PID_FILE, instance.getPidFile().getAbsolutePath() );
+            props.put( ForkedAppLauncher.LAUNCH_TOKEN, UUID.randomUUID().toString() );
+        }
+        if ( instance.getMetricsPort() > -1 )
+        {
+            props.put( ForkedAppLauncher.METRICS_PORT, String.valueOf( instance.getMetricsPort() ) );
+        }
+        if ( instance.getClassDataSharing() != null && instance.getClassDataSharing().isTraining() )
+        {
+            props.put( ForkedAppLauncher.CDS_LOCK_FILE,
+                       instance.getClassDataSharing().getLockFile().getAbsolutePath() );
+        }
+
+        if ( outputCapture )
+        {
+            if ( !AsyncOutputStream.DROP.equals( outputOverflow ) && !AsyncOutputStream.SAMPLE.equals( outputOverflow )
+                && !AsyncOutputStream.SPILL.equals( outputOverflow ) )
+            {
+                throw new MojoExecutionException( "Invalid outputOverflow: '" + outputOverflow
+                    + "'; expected one of: drop, sample, spill." );
+            }
+            if ( outputBufferLines < 1 )
+            {
+                throw new MojoExecutionException( "Invalid outputBufferLines: " + outputBufferLines
+                    + "; at least 1 line must be buffered." );
+            }
+
+            props.put( ForkedAppLauncher.OUTPUT_BUFFER_LINES, String.valueOf( outputBufferLines ) );
+            props.put( ForkedAppLauncher.OUTPUT_OVERFLOW, outputOverflow );
+            props.put( ForkedAppLauncher.OUTPUT_SPILL_FILE,
+                       new File( instance.getTargetDir(), OUTPUT_SPILL ).getAbsolutePath() );
+            if ( outputLog )
+            {
+                props.put( ForkedAppLauncher.OUTPUT_FILE,
+                           new File( instance.getTargetDir(), OUTPUT_LOG ).getAbsolutePath() );
+                props.put( ForkedAppLauncher.OUTPUT_MAX_FILE_SIZE, String.valueOf( outputMaxFileSize ) );
+                props.put( ForkedAppLauncher.OUTPUT_MAX_FILES, String.valueOf( outputMaxFiles ) );
+                props.put( ForkedAppLauncher.OUTPUT_ROLL_INTERVAL, String.valueOf( outputRollInterval ) );
+            }
+        }
+
+        return props;
+    }
+
+    /**
+     * @return the jar (or directory) this plugin's classes were loaded from, which provides
+     *         {@link ForkedAppLauncher} to the forked realm.
+     */
+    private File getPluginLocation()
+        throws MojoExecutionException
+    {
+        ProtectionDomain domain = ForkedAppLauncher.class.getProtectionDomain();
+        CodeSource source = domain == null ? null : domain.getCodeSource();
+        if ( source == null || source.getLocation() == null )
+        {
+            throw new MojoExecutionException( "Cannot locate the plx-maven-plugin jar: no code source." );
+        }
+
+        try
+        {
+            return new File( source.getLocation().toURI() );
+        }
+        catch ( URISyntaxException e )
+        {
+            throw new MojoExecutionException( "Cannot locate the plx-maven-plugin jar: " + e.getMessage(), e );
+        }
+    }
+
+    /**
+     * @return JVM options appended to the java command for this launch, each preceded by a space.
+     */
+    private String getExtraJvmOptions( AppInstance instance )
+        throws MojoExecutionException, MojoFailureException
+    {
+        StringBuilder options = new StringBuilder();
+
+        instance.setClassDataSharing( null );
+        if ( classDataSharing )
+        {
+            // the archive is only valid for the exact classpath and JVM it was dumped from, both in the fingerprint.
+            ClassDataSharing cds =
+                new ClassDataSharing( new File( instance.getTargetDir(), CDS_DIR ), getRealmFingerprint( instance ) );
+            try
+            {
+                cds.prepare();
+            }
+            catch ( IOException e )
+            {
+                throw new MojoExecutionException( "Failed to prepare class data sharing archive directory: "
+                    + cds.getArchive().getParent(), e );
+            }
+
+            if ( cds.isTraining() )
+            {
+                getLog().info( "No class data sharing archive for this classpath yet; it will be written to: "
+                    + cds.getArchive() + " after the application exits." );
+            }
+            else if ( cds.isBaseline() )
+            {
+                getLog().info( "Starting without class data sharing, to compare its startup time against." );
+            }
+
+            instance.setClassDataSharing( cds );
+            if ( cds.getJvmOption() != null )
+            {
+                options.append( ' ' ).append( cds.getJvmOption() );
+            }
+        }
+
+        return options.toString();
+    }
+
+    protected void startBooter( AppInstance instance, MavenForkedAppBooter mavenForkedAppBooter )
+        throws MojoFailureException
+    {
+        long start = System.currentTimeMillis();
+
+        // run it!
+        try
+        {
+            mavenForkedAppBooter.start();
+        }
+        catch ( AppBooterServiceException e )
+        {
+            throw new MojoFailureException( e.getMessage(), e );
+        }
+
+        instance.getTimeline().record( "fork", start );
+    }
+
+    /**
+     * Record the time Maven spent before this mojo started, which includes any forked lifecycle.
+     */
+    protected void recordLifecycleTime( AppInstance instance )
+    {
+        if ( session != null && session.getStartTime() != null )
+        {
+            instance.getTimeline().record( "lifecycle", session.getStartTime().getTime() );
+        }
+    }
+
+    /**
+     * Write the startup timeline of the instance's current launch to <code>plx-startup.json</code> in its target
+     * directory, and log it as one line if <code>startupSummary</code> is set.
+     */
+    protected void reportStartup( AppInstance instance )
+    {
+        StartupTimeline timeline = instance.getTimeline();
+        if ( startupSummary )
+        {
+            getLog().info( "plx startup [" + instance.getId() + "]: " + timeline.toSummary() );
+        }
+
+        if ( startupReport )
+        {
+            File report = new File( instance.getTargetDir(), STARTUP_REPORT );
+            try
+            {
+                timeline.write( report, instance.getId(), getRealmFingerprint( instance ) );
+            }
+            catch ( IOException e )
+            {
+                getLog().warn( "Failed to write startup report: " + report + ": " + e.getMessage() );
+            }
+            catch ( MojoExecutionException e )
+            {
+                getLog().warn( "Failed to write startup report: " + report + ": " + e.getMessage() );
+            }
+            catch ( MojoFailureException e )
+            {
+                getLog().warn( "Failed to write startup report: " + report + ": " + e.getMessage() );
+            }
+        }
+    }
+
+    protected boolean isWaitForReady()
+    {
+        // the ready budget needs a measured time to ready.
+        return waitForReady || maxReadyMillis > -1;
+    }
+
+    /**
+     * Measure the ready application against the configured budgets, and fail with a report of every budgeted value if
+     * any budget is exceeded.
+     */
+    protected void checkBudgets( AppInstance instance )
+        throws MojoExecutionException, MojoFailureException
+    {
+        if ( !hasBudgets() )
+        {
+            return;
+        }
+
+        List<String> report = new ArrayList<String>();
+        int exceeded = 0;
+
+        if ( maxReadyMillis > -1 )
+        {
+            StartupTimeline timeline = instance.getTimeline();
+            long ready = Math.max( 0, timeline.getDuration( "fork" ) ) + Math.max( 0, timeline.getDuration( "ready" ) );
+            exceeded += checkBudget( report, "time to ready", ready, maxReadyMillis, "ms" );
+        }
+
+        if ( hasMetricsBudget() )
+        {
+            Properties metrics;
+            try
+            {
+                metrics = RuntimeMetrics.fetch( instance.getMetricsPort(), METRICS_TIMEOUT, true );
+            }
+            catch ( IOException e )
+            {
+                throw new MojoExecutionException( "Failed to read metrics of " + instance.getId() + " from port "
+                    + instance.getMetricsPort() + ": " + e.getMessage(), e );
+            }
+
+            if ( maxHeapMb > -1 )
+            {
+                exceeded += checkBudget( report, "heap used", RuntimeMetrics.getLong( metrics, RuntimeMetrics.HEAP_USED )
+                    / MB, maxHeapMb, "MB" );
+            }
+            if ( maxLoadedClasses > -1 )
+            {
+                exceeded += checkBudget( report, "loaded classes",
+                                         RuntimeMetrics.getLong( metrics, RuntimeMetrics.LOADED_CLASSES ),
+                                         maxLoadedClasses, "" );
+            }
+            if ( maxRssMb > -1 )
+            {
+                long rss = RuntimeMetrics.getLong( metrics, RuntimeMetrics.RSS );
+                if ( rss < 0 )
+                {
+                    report.add( "resident set size: not available on this platform" );
+                }
+                else
+                {
+                    exceeded += checkBudget( report, "resident set size", rss / MB, maxRssMb, "MB" );
+                }
+            }
+        }
+
+        if ( exceeded > 0 )
+        {
+            throw new MojoFailureException( "Plexus application: " + instance.getId() + " exceeded " + exceeded
+                + " budget(s):\n  " + StringUtils.join( report.toArray(), "\n  " ) );
+        }
+
+        getLog().info( "Plexus application: " + instance.getId() + " is within its budgets:" );
+        for ( String line : report )
+        {
+            getLog().info( "  " + line );
+        }
+    }
+
+    /**
+     * Add a line comparing <code>actual</code> to <code>budget</code> to the report.
+     *
+     * @return 1 if the budget is exceeded, otherwise 0.
+     */
+    private static int checkBudget( List<String> report, String name, long actual, long budget, String unit )
+    {
+        long diff = actual - budget;
+        StringBuilder sb = new StringBuilder( name ).append( ": " ).append( actual ).append( unit );
+        sb.append( " (budget " ).append( budget ).append( unit );
+        if ( diff > 0 )
+        {
+            sb.append( ", +" ).append( diff ).append( unit );
+            if ( budget > 0 )
+            {
+                sb.append( " / +" ).append( diff * 100 / budget ).append( "%" );
+            }
+            sb.append( ") EXCEEDED" );
+        }
+        else
+        {
+            sb.append( ")" );
+        }
+        report.add( sb.toString() );
+        return diff > 0 ? 1 : 0;
+    }
+
+    /**
+     * @return a probe for the instance's control port, and the configured <code>readinessPort</code> and
+     *         <code>readinessUrl</code> if {@link #isSharedReadinessChecked()}; callers may add further checks before
+     *         waiting on it.
+     */
+    protected ReadinessProbe createReadinessProbe( AppInstance instance )
+    {
+        ReadinessProbe probe = new ReadinessProbe( readinessTimeout, getLog() );
+        probe.addTcpCheck( "localhost", instance.getControlPort() );
+        if ( isSharedReadinessChecked() )
+        {
+            if ( readinessPort > -1 )
+            {
+                probe.addTcpCheck( "localhost", readinessPort );
+            }
+            if ( readinessUrl != null )
+            {
+                probe.addHttpCheck( readinessUrl );
+            }
+        }
+        return probe;
+    }
+
+    /**
+     * @return true if the configured <code>readinessPort</code> and <code>readinessUrl</code> tell when the launched
+     *         application is ready, false for goals that launch several applications, which can't all own them.
+     */
+    protected boolean isSharedReadinessChecked()
+    {
+        return true;
+    }
+
+    protected boolean hasSharedReadinessChecks()
+    {
+        return readinessPort > -1 || readinessUrl != null;
+    }
+
+    /**
+     * @return the number of milliseconds it took for the instance to become ready.
+     */
+    protected long awaitReadiness( AppInstance instance, ReadinessProbe probe )
+        throws MojoFailureException
+    {
+        if ( !probe.awaitReady() )
+        {
+            throw new MojoFailureException( "Plexus application: " + instance.getId() + " was not ready after "
+                + readinessTimeout + "ms; still waiting for: " + probe.getFailure() );
+        }
+
+        getLog().info( "Plexus application: " + instance.getId() + " ready in " + probe.getElapsed() + "ms." );
+        instance.getTimeline().record( "ready", System.currentTimeMillis() - probe.getElapsed() );
+
+        ClassDataSharing cds = instance.getClassDataSharing();
+        if ( cds != null )
+        {
+            if ( cds.isBaseline() && cds.getBaselineTime() < 0 )
+            {
+                try
+                {
+                    cds.recordBaselineTime( probe.getElapsed() );
+                }
+                catch ( IOException e )
+                {
+                    getLog().warn( "Failed to record startup time without class data sharing: " + e.getMessage() );
+                }
+            }
+            else if ( !cds.isBaseline() && !cds.isTraining() && cds.getBaselineTime() > -1 )
+            {
+                getLog().info( "Class data sharing saved " + ( cds.getBaselineTime() - probe.getElapsed() )
+                    + "ms of startup (ready in " + cds.getBaselineTime() + "ms without it)." );
+            }
+        }
+
+        return probe.getElapsed();
+    }
+
+    /**
+     * Shut the instance down and wait until it exited, killing it if it doesn't exit in time.
+     *
+     * @return true if the application had to be killed.
+     */
+    protected boolean shutdownForkedApp( AppInstance instance )
+        throws MojoExecutionException
+    {
+        if ( new InstanceStopper( SHUTDOWN_TIMEOUT, true ).stop( instance.getControlPort(), instance.getPidFile() ) )
+        {
+            getLog().warn( "Killed plexus application " + instance.getId() + ": it did not exit within "
+                + SHUTDOWN_TIMEOUT + "ms of shutdown." );
+            return true;
+        }
+        return false;
+    }
+
+    protected InstanceRegistry.Entry createRegistryEntry( AppInstance instance )
+    {
+        InstanceRegistry.Entry entry = new InstanceRegistry.Entry( instance.getId() );
+        entry.setControlPort( instance.getControlPort() );
+        entry.setDebugPort( instance.getDebugPort() );
+        entry.setMetricsPort( instance.getMetricsPort() );
+        entry.setBasedir( instance.getBasedir() );
+        entry.setReadyMillis( instance.getTimeline().getDuration( "ready" ) );
+        entry.setPidFile( instance.getPidFile() );
+        return entry;
+    }
+
+    protected void writeRegistry( InstanceRegistry registry )
+        throws MojoExecutionException
+    {
+        try
+        {
+            registry.write( registryFile );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Failed to write instance registry: " + registryFile, e );
+        }
+    }
+
+    protected File getRegistryFile()
+    {
+        return registryFile;
+    }
+
+    /**
+     * Resolve the platform for the instance, honouring its managed versions. The result is kept on the instance.
+     */
+    protected File getPlatformFile( AppInstance instance )
+        throws MojoFailureException, MojoExecutionException
+    {
+        if ( instance.getPlatformFile() != null )
+        {
+            return instance.getPlatformFile();
+        }
+
+        String platformVersion = platformArtifact.getVersion();
+        Map<String, Artifact> managedVersionMap = instance.getManagedVersionMap();
+        if ( managedVersionMap != null )
+        {
+            Artifact managed = managedVersionMap.get( platformArtifact.getManagementKey() );
+            if ( managed != null )
+            {
+                platformVersion = managed.getVersion();
+            }
+        }
+
+        PlatformCache cache =
+            usePlatformCache || platformOffline ? new PlatformCache( platformCacheDirectory,
+                                                                     platformCacheRevalidateInterval ) : null;
+        File platformFile = null;
+        File platformSource = null;
+
+        // a platform that changed under a running application is resolved again, unless that's not allowed.
+        if ( cache != null && ( !instance.isPlatformStale() || platformOffline ) )
+        {
+            try
+            {
+                platformFile =
+                    cache.lookup( platformArtifact.getGroupId(), platformArtifact.getArtifactId(), platformVersion,
+                                  platformOffline );
+                if ( platformFile != null )
+                {
+                    platformSource =
+                        cache.getSource( platformArtifact.getGroupId(), platformArtifact.getArtifactId(),
+                                         platformVersion );
+                }
+            }
+            catch ( IOException e )
+            {
+                getLog().warn( "Failed to read platform cache: " + e.getMessage() );
+            }
+        }
+
+        if ( platformFile == null )
+        {
+            if ( platformOffline )
+            {
+                throw new MojoExecutionException( "Platform artifact: " + platformArtifact.getManagementKey() + ":"
+                    + platformVersion + " is missing from, or failed verification in, the platform cache: "
+                    + platformCacheDirectory + ". Run once without plx.platformOffline to populate it." );
+            }
+
+            platformFile = resolvePlatformFile( platformVersion );
+            platformSource = platformFile;
+
+            if ( cache != null )
+            {
+                try
+                {
+                    platformFile =
+                        cache.store( platformArtifact.getGroupId(), platformArtifact.getArtifactId(),
+                                     platformVersion, platformFile );
+                }
+                catch ( IOException e )
+                {
+                    getLog().warn( "Failed to write platform cache: " + e.getMessage() );
+                }
+            }
+        }
+
+        if ( outputDebugMessages() )
+        {
+            getLog().info( "Using plexus platform: " + platformArtifact + "\nFile: " + platformFile.getAbsolutePath() );
+        }
+
+        instance.setPlatformFile( platformFile );
+        instance.setPlatformSource( platformSource != null ? platformSource : platformFile );
+        instance.setPlatformStale( false );
+        return platformFile;
+    }
+
+    private File resolvePlatformFile( String platformVersion )
+        throws MojoExecutionException
+    {
+        Artifact platform =
+            factory.createArtifact( platformArtifact.getGroupId(), platformArtifact.getArtifactId(), platformVersion,
+                                    null, platformArtifact.getType() );
+        try
+        {
+            resolver.resolve( platform, remoteRepositories, localRepository );
+        }
+        catch ( ArtifactResolutionException e )
+        {
+            throw new MojoExecutionException( "Failed to resolve platform artifact: " + platform.getId(), e );
+        }
+        catch ( ArtifactNotFoundException e )
+        {
+            throw new MojoExecutionException( "Cannot find platform artifact: " + platform.getId(), e );
+        }
+
+        return platform.getFile();
+    }
+
+    protected boolean outputDebugMessages()
+    {
+        return debug || debugOutput || getLog().isDebugEnabled();
+    }
+
+    protected boolean isDebug()
+    {
+        if ( debug )
+        {
+            return true;
+        }
+
+        // an unknown profile is reported when the booter is created.
+        LaunchProfile profile =
+            launchProfile == null || launchProfile.length() == 0 ? null : LaunchProfile.find( launchProfile,
+                                                                                               launchProfiles );
+        return profile != null && profile.isDebug();
+    }
+
+    protected boolean isIncludeTestClasspath()
+    {
+        return includeTestClasspath;
+    }
+
+    protected ClassworldsRealmConfiguration getClassworldsRealmConfig( AppInstance instance )
+        throws MojoExecutionException, MojoFailureException
+    {
+        ClassworldsRealmConfiguration rootRealmConfig = new ClassworldsRealmConfiguration( "plexus" );
+
+        if ( useLauncherWrapper() )
+        {
+            rootRealmConfig.addLoadPattern( getPluginLocation().getAbsolutePath() );
+        }
+
+        List<String> entries = getRealmEntries( instance );
+        if ( analyzeRealm )
+        {
+            entries = analyzeRealmEntries( instance, entries );
+        }
+        if ( usePathingJar )
+        {
+            entries = toPathingJar( instance, entries );
+        }
+        rootRealmConfig.addLoadPatterns( entries );
+
+        return rootRealmConfig;
+    }
+
+    /**
+     * Report duplicate classes in the realm and, with <code>dropShadowedJars</code>, remove fully shadowed jars.
+     */
+    private List<String> analyzeRealmEntries( AppInstance instance, List<String> entries )
+    {
+        File cacheDir = new File( instance.getTargetDir(), REALM_CACHE_DIR );
+        String fingerprint = RealmIndex.fingerprint( entries );
+
+        RealmIndex index = null;
+        try
+        {
+            index = RealmIndex.load( cacheDir, fingerprint );
+        }
+        catch ( IOException e )
+        {
+            getLog().warn( "Failed to read realm index; rebuilding it: " + e.getMessage() );
+        }
+
+        if ( index == null )
+        {
+            try
+            {
+                index = RealmIndex.build( entries );
+            }
+            catch ( IOException e )
+            {
+                getLog().warn( "Failed to index the realm: " + e.getMessage() );
+                return entries;
+            }
+
+            try
+            {
+                index.store( cacheDir, fingerprint );
+            }
+            catch ( IOException e )
+            {
+                getLog().warn( "Failed to write realm index: " + e.getMessage() );
+            }
+        }
+
+        if ( !index.getReport().isEmpty() )
+        {
+            getLog().warn( "The realm of " + instance.getId() + " contains duplicate classes:" );
+            for ( String line : index.getReport() )
+            {
+                getLog().warn( "  " + line );
+            }
+        }
+
+        if ( !dropShadowedJars || index.getShadowed().isEmpty() )
+        {
+            return entries;
+        }
+
+        List<String> result = new ArrayList<String>( entries );
+        for ( String jar : index.getShadowed() )
+        {
+            getLog().info( "Leaving fully shadowed jar out of the realm: " + jar );
+            result.remove( jar );
+        }
+        return result;
+    }
+
+    /**
+     * Replace the plain paths among the realm entries with a pathing jar listing them. Load patterns with wildcards
+     * stay as they are, ahead of the jar if they came before the first path.
+     */
+    private List<String> toPathingJar( AppInstance instance, List<String> entries )
+        throws MojoExecutionException
+    {
+        List<String> leading = new ArrayList<String>();
+        List<String> paths = new ArrayList<String>();
+        List<String> patterns = new ArrayList<String>();
+        for ( String entry : entries )
+        {
+            if ( PathingJar.isPath( entry ) )
+            {
+                paths.add( entry );
+            }
+            else
+            {
+                ( paths.isEmpty() ? leading : patterns ).add( entry );
+            }
+        }
+
+        File jar;
+        try
+        {
+            jar = new PathingJar( new File( instance.getTargetDir(), REALM_CACHE_DIR ) ).getJar( paths );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Failed to write pathing jar: " + e.getMessage(), e );
+        }
+
+        List<String> result = new ArrayList<String>( leading );
+        result.add( jar.getAbsolutePath() );
+        result.addAll( patterns );
+        return result;
+    }
+
+    protected List<String> getRealmEntries( AppInstance instance )
+        throws MojoExecutionException, MojoFailureException
+    {
+        if ( outputDebugMessages() )
+        {
+            getLog().info( "Plexus realm fingerprint: " + getRealmFingerprint( instance ) );
+        }
+
+        List<String> entries = new ArrayList<String>();
+
+        if ( prependClasspaths != null && !prependClasspaths.isEmpty() )
+        {
+            entries.addAll( prependClasspaths );
+        }
+
+        if ( includeTestClasspath )
+        {
+            entries.add( instance.getTestClasses().getAbsolutePath() );
+        }
+
+        entries.add( instance.getClasses().getAbsolutePath() );
+
+        entries.addAll( getDependencyPaths( instance ) );
+
+        return entries;
+    }
+
+    /**
+     * Fingerprint of every input of the application realm and its launch: the resolved artifact files, the checksum
+     * of the resolved platform jar, the effective JVM options and system properties (launch profile included), and
+     * the relevant mojo configuration. It keys the files derived from the realm, such as the class data sharing
+     * archive.
+     */
+    protected String getRealmFingerprint( AppInstance instance )
+        throws MojoExecutionException, MojoFailureException
+    {
+        if ( instance.getRealmFingerprint() == null )
+        {
+            // the resolved jar, not the configured version: managed versions and re-resolved snapshots differ from it.
+            File platformFile = getPlatformFile( instance );
+            ClasspathFingerprint fingerprint = new ClasspathFingerprint();
+            try
+            {
+                fingerprint.add( "platform", PlatformCache.checksum( platformFile ) );
+            }
+            catch ( IOException e )
+            {
+                throw new MojoExecutionException( "Failed to read platform jar: " + platformFile, e );
+            }
+            fingerprint.add( "javaCmd", isDebug() ? getDebugJavaCmd() : getJavaCmd() );
+            fingerprint.add( "prependClasspaths", prependClasspaths );
+            fingerprint.add( "includeTestClasspath", Boolean.valueOf( includeTestClasspath ) );
+            fingerprint.add( "classes", instance.getClasses().getAbsolutePath() );
+            fingerprint.add( "testClasses", instance.getTestClasses().getAbsolutePath() );
+            fingerprint.addMap( "systemProperties", getSystemProperties() );
+
+            for ( Artifact artifact : instance.getArtifacts() )
+            {
+                fingerprint.add( "scope", artifact.getScope() );
+                fingerprint.addFile( "artifact", artifact.getFile() );
+            }
+
+            instance.setRealmFingerprint( fingerprint.finish() );
+        }
+        return instance.getRealmFingerprint();
+    }
+
+    private LinkedHashSet<String> getDependencyPaths( AppInstance instance )
+    {
+        LinkedHashSet<String> paths = new LinkedHashSet<String>();
+        for ( Artifact artifact : getRealmArtifacts( instance ) )
+        {
+            paths.add( artifact.getFile().getAbsolutePath() );
+        }
+        return paths;
+    }
+
+    /**
+     * @return the dependency jars of the realm.
+     */
+    protected List<File> getDependencyFiles( AppInstance instance )
+    {
+        List<File> files = new ArrayList<File>();
+        for ( Artifact artifact : getRealmArtifacts( instance ) )
+        {
+            if ( artifact.getFile() != null && artifact.getFile().isFile() )
+            {
+                files.add( artifact.getFile() );
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @return the platform jar in the local repository (not its cached copy) and the prepended class paths, which make
+     *         up the container rather than the application.
+     */
+    protected List<File> getPlatformFiles( AppInstance instance )
+    {
+        List<File> files = new ArrayList<File>();
+        if ( instance.getPlatformSource() != null )
+        {
+            files.add( instance.getPlatformSource() );
+        }
+        if ( prependClasspaths != null )
+        {
+            for ( String path : prependClasspaths )
+            {
+                if ( PathingJar.isPath( path ) )
+                {
+                    files.add( new File( path ).getAbsoluteFile() );
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Forget everything derived from the realm's inputs, so the next launch of the instance rebuilds the realm (and
+     * class data sharing archive, pathing jar and realm index) for the changed files.
+     *
+     * @param platform also resolve the platform again, bypassing the platform cache.
+     */
+    protected void invalidateRealm( AppInstance instance, boolean platform )
+    {
+        instance.setRealmFingerprint( null );
+        if ( platform )
+        {
+            instance.setPlatformFile( null );
+            instance.setPlatformStale( true );
+        }
+    }
+
+    private List<Artifact> getRealmArtifacts( AppInstance instance )
+    {
+        if ( includeTestClasspath )
+        {
+            return instance.getArtifacts();
+        }
+
+        // NOTE: We're including compile, runtime, and provided scopes here
+        // since the platform may be assumed to be provided by the distro base,
+        // where this might only be executing the app that runs inside that base.
+        List<Artifact> artifacts = new ArrayList<Artifact>();
+        for ( Artifact artifact : instance.getArtifacts() )
+        {
+            if ( Artifact.SCOPE_COMPILE.equals( artifact.getScope() )
+                || Artifact.SCOPE_RUNTIME.equals( artifact.getScope() )
+                || Artifact.SCOPE_PROVIDED.equals( artifact.getScope() ) )
+            {
+                artifacts.add( artifact );
+            }
+        }
+        return artifacts;
+    }
+
+    /**
+     * Resolve realm artifacts whose files are missing, and fail if any of the files is not a valid jar.
+     */
+    private void verifyRealmArtifacts( AppInstance instance )
+        throws MojoExecutionException, MojoFailureException
+    {
+        List<Artifact> artifacts = getRealmArtifacts( instance );
+        RealmVerifier verifier = new RealmVerifier( verifyChecksums, Runtime.getRuntime().availableProcessors() );
+
+        // resolution isn't thread-safe, so missing files are resolved one at a time; they are rare.
+        for ( Artifact artifact : verifier.findMissing( artifacts ) )
+        {
+            getLog().info( "Realm artifact file is missing; resolving it again: " + artifact.getId() );
+            try
+            {
+                resolver.resolve( artifact, remoteRepositories, localRepository );
+            }
+            catch ( ArtifactResolutionException e )
+            {
+                throw new MojoExecutionException( "Failed to resolve realm artifact: " + artifact.getId(), e );
+            }
+            catch ( ArtifactNotFoundException e )
+            {
+                throw new MojoExecutionException( "Cannot find realm artifact: " + artifact.getId(), e );
+            }
+
+            if ( artifact.getFile() == null || !artifact.getFile().exists() )
+            {
+                throw new MojoExecutionException( "Realm artifact: " + artifact.getId()
+                    + " has no file after resolution." );
+            }
+        }
+
+        List<String> corrupt = verifier.findCorrupt( artifacts );
+        if ( !corrupt.isEmpty() )
+        {
+            throw new MojoFailureException( "Invalid artifact file(s) in the realm of " + instance.getId()
+                + "; delete them from the local repository to download them again:\n  "
+                + StringUtils.join( corrupt.toArray(), "\n  " ) );
+        }
+    }
+
+    protected ArtifactResolver getResolver()
+    {
+        return resolver;
+    }
+
+    protected ArtifactFactory getFactory()
+    {
+        return factory;
+    }
+
+    protected ArtifactRepository getLocalRepository()
+    {
+        return localRepository;
+    }
+
+    public Log getLog()
+    {
+        return log;
+    }
+
+    public void setLog( Log log )
+    {
+        this.log = log;
+    }
+
+    public void contextualize( Context context )
+        throws ContextException
+    {
+        this.container = (PlexusContainer) context.get( PlexusConstants.PLEXUS_KEY );
+
+    }
+
+}
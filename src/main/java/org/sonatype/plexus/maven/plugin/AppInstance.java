@@ -0,0 +1,269 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * Everything that differs between two forked Plexus applications launched by this plugin: the project layout, its
+ * resolved artifacts and the ports it listens on.
+ */
+public class AppInstance
+{
+
+    private String id;
+
+    private File basedir;
+
+    private File configuration;
+
+    private File targetDir;
+
+    private File classes;
+
+    private File testClasses;
+
+    private List<Artifact> artifacts;
+
+    private Map<String, Artifact> managedVersionMap;
+
+    private int controlPort;
+
+    private int debugPort;
+
+    private int metricsPort = -1;
+
+    private String realmFingerprint;
+
+    private File platformFile;
+
+    private File platformSource;
+
+    private boolean platformStale;
+
+    private ClassDataSharing classDataSharing;
+
+    private File pidFile;
+
+    private StartupTimeline timeline = new StartupTimeline();
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public void setId( String id )
+    {
+        this.id = id;
+    }
+
+    public File getBasedir()
+    {
+        return basedir;
+    }
+
+    public void setBasedir( File basedir )
+    {
+        this.basedir = basedir;
+    }
+
+    public File getConfiguration()
+    {
+        return configuration;
+    }
+
+    public void setConfiguration( File configuration )
+    {
+        this.configuration = configuration;
+    }
+
+    public File getTargetDir()
+    {
+        return targetDir;
+    }
+
+    public void setTargetDir( File targetDir )
+    {
+        this.targetDir = targetDir;
+    }
+
+    public File getClasses()
+    {
+        return classes;
+    }
+
+    public void setClasses( File classes )
+    {
+        this.classes = classes;
+    }
+
+    public File getTestClasses()
+    {
+        return testClasses;
+    }
+
+    public void setTestClasses( File testClasses )
+    {
+        this.testClasses = testClasses;
+    }
+
+    /**
+     * @return the resolved test-scope artifacts of the project; the realm only includes the scopes it needs.
+     */
+    public List<Artifact> getArtifacts()
+    {
+        return artifacts;
+    }
+
+    public void setArtifacts( List<Artifact> artifacts )
+    {
+        this.artifacts = artifacts;
+    }
+
+    public Map<String, Artifact> getManagedVersionMap()
+    {
+        return managedVersionMap;
+    }
+
+    public void setManagedVersionMap( Map<String, Artifact> managedVersionMap )
+    {
+        this.managedVersionMap = managedVersionMap;
+    }
+
+    public int getControlPort()
+    {
+        return controlPort;
+    }
+
+    public void setControlPort( int controlPort )
+    {
+        this.controlPort = controlPort;
+    }
+
+    public int getDebugPort()
+    {
+        return debugPort;
+    }
+
+    public void setDebugPort( int debugPort )
+    {
+        this.debugPort = debugPort;
+    }
+
+    /**
+     * @return the port the application serves its {@link RuntimeMetrics} on, or -1.
+     */
+    public int getMetricsPort()
+    {
+        return metricsPort;
+    }
+
+    public void setMetricsPort( int metricsPort )
+    {
+        this.metricsPort = metricsPort;
+    }
+
+    public String getRealmFingerprint()
+    {
+        return realmFingerprint;
+    }
+
+    public void setRealmFingerprint( String realmFingerprint )
+    {
+        this.realmFingerprint = realmFingerprint;
+    }
+
+    public File getPlatformFile()
+    {
+        return platformFile;
+    }
+
+    public void setPlatformFile( File platformFile )
+    {
+        this.platformFile = platformFile;
+    }
+
+    /**
+     * @return the local repository file the platform was resolved to; the platform file itself may be a cached copy.
+     */
+    public File getPlatformSource()
+    {
+        return platformSource;
+    }
+
+    public void setPlatformSource( File platformSource )
+    {
+        this.platformSource = platformSource;
+    }
+
+    /**
+     * @return true if the platform changed in the local repository, so the next launch must resolve it again rather
+     *         than use the platform cache.
+     */
+    public boolean isPlatformStale()
+    {
+        return platformStale;
+    }
+
+    public void setPlatformStale( boolean platformStale )
+    {
+        this.platformStale = platformStale;
+    }
+
+    /**
+     * @return the class data sharing archive used by the current launch, or null if class data sharing is disabled.
+     */
+    public ClassDataSharing getClassDataSharing()
+    {
+        return classDataSharing;
+    }
+
+    public void setClassDataSharing( ClassDataSharing classDataSharing )
+    {
+        this.classDataSharing = classDataSharing;
+    }
+
+    /**
+     * @return the file the forked application writes its process id to, or null if it doesn't.
+     */
+    public File getPidFile()
+    {
+        return pidFile;
+    }
+
+    public void setPidFile( File pidFile )
+    {
+        this.pidFile = pidFile;
+    }
+
+    /**
+     * @return the phase timings of the current launch.
+     */
+    public StartupTimeline getTimeline()
+    {
+        return timeline;
+    }
+
+    public void setTimeline( StartupTimeline timeline )
+    {
+        this.timeline = timeline;
+    }
+
+}
@@ -0,0 +1,329 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replacement for the forked application's stdout or stderr that never blocks the writing thread. Complete lines are
+ * queued in a bounded buffer and written to the real stream (the pipe read by Maven) and an optional rolling log file
+ * by a background thread. Lines longer than {@link #MAX_LINE} bytes are queued in pieces. When the buffer is full,
+ * lines are handled according to the overflow policy:
+ * <ul>
+ * <li><code>drop</code>: discard the line.</li>
+ * <li><code>sample</code>: once the buffer is three quarters full, only keep every tenth line; discard the rest.</li>
+ * <li><code>spill</code>: queue the line in a second buffer of the same size, which another background thread appends
+ * to a spill file; discard it if that buffer is full as well.</li>
+ * </ul>
+ */
+public class AsyncOutputStream
+    extends OutputStream
+{
+
+    public static final String DROP = "drop";
+
+    public static final String SAMPLE = "sample";
+
+    public static final String SPILL = "spill";
+
+    /**
+     * Size in bytes at which a partial line is queued, so output without line ends can't grow without bound.
+     */
+    public static final int MAX_LINE = 8192;
+
+    private static final int SAMPLE_RATE = 10;
+
+    private final BlockingQueue<byte[]> queue;
+
+    private final int capacity;
+
+    private final String overflow;
+
+    private final OutputStream target;
+
+    private final RollingLogFile logFile;
+
+    private final File spillFile;
+
+    private final Thread drainer;
+
+    private final BlockingQueue<byte[]> spillQueue;
+
+    private final Thread spiller;
+
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream( 256 );
+
+    private long sampled;
+
+    private volatile long dropped;
+
+    private volatile long spilled;
+
+    private volatile boolean closed;
+
+    /**
+     * @param logFile shared rolling log file, or null.
+     * @param spillFile file receiving overflowing lines under the <code>spill</code> policy.
+     */
+    public AsyncOutputStream( String name, OutputStream target, int capacity, String overflow, RollingLogFile logFile,
+                              File spillFile )
+    {
+        this.target = target;
+        this.capacity = capacity;
+        this.overflow = overflow;
+        this.logFile = logFile;
+        this.spillFile = spillFile;
+        this.queue = new ArrayBlockingQueue<byte[]>( capacity );
+
+        drainer = new Thread( "plx-output-" + name )
+        {
+            @Override
+            public void run()
+            {
+                drain();
+            }
+        };
+        drainer.setDaemon( true );
+        drainer.start();
+
+        if ( SPILL.equals( overflow ) )
+        {
+            spillQueue = new ArrayBlockingQueue<byte[]>( capacity );
+            spiller = new Thread( "plx-output-" + name + "-spill" )
+            {
+                @Override
+                public void run()
+                {
+                    spill();
+                }
+            };
+            spiller.setDaemon( true );
+            spiller.start();
+        }
+        else
+        {
+            spillQueue = null;
+            spiller = null;
+        }
+    }
+
+    @Override
+    public synchronized void write( int b )
+        throws IOException
+    {
+        line.write( b );
+        if ( b == '\n' || line.size() >= MAX_LINE )
+        {
+            enqueue();
+        }
+    }
+
+    @Override
+    public synchronized void write( byte[] b, int off, int len )
+        throws IOException
+    {
+        int start = off;
+        for ( int i = off; i < off + len; i++ )
+        {
+            if ( b[i] == '\n' || line.size() + i + 1 - start >= MAX_LINE )
+            {
+                line.write( b, start, i + 1 - start );
+                enqueue();
+                start = i + 1;
+            }
+        }
+        line.write( b, start, off + len - start );
+    }
+
+    @Override
+    public synchronized void flush()
+        throws IOException
+    {
+        // hand over partial lines on explicit flushes, so prompts without a line end still show up.
+        if ( line.size() > 0 )
+        {
+            enqueue();
+        }
+    }
+
+    /**
+     * Flush, then wait up to <code>timeout</code> milliseconds for the buffered lines to be written.
+     */
+    public void close( long timeout )
+    {
+        try
+        {
+            flush();
+        }
+        catch ( IOException e )
+        {
+            // nothing buffered can fail here.
+        }
+
+        closed = true;
+        try
+        {
+            long deadline = System.currentTimeMillis() + timeout;
+            drainer.join( timeout );
+            if ( spiller != null )
+            {
+                // both threads drain at the same time, so they share the timeout.
+                spiller.join( timeout > 0 ? Math.max( 1, deadline - System.currentTimeMillis() ) : 0 );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        close( 0 );
+    }
+
+    public long getDropped()
+    {
+        return dropped;
+    }
+
+    public long getSpilled()
+    {
+        return spilled;
+    }
+
+    private void enqueue()
+        throws IOException
+    {
+        byte[] bytes = line.toByteArray();
+        line.reset();
+
+        if ( SAMPLE.equals( overflow ) && queue.size() >= capacity * 3 / 4 && ( sampled++ % SAMPLE_RATE ) != 0 )
+        {
+            dropped++;
+            return;
+        }
+
+        if ( queue.offer( bytes ) )
+        {
+            return;
+        }
+
+        // the spill file is written by the spill thread, so a slow disk doesn't block the writer either.
+        if ( spillQueue != null && spillQueue.offer( bytes ) )
+        {
+            spilled++;
+        }
+        else
+        {
+            dropped++;
+        }
+    }
+
+    private void drain()
+    {
+        while ( !closed || !queue.isEmpty() )
+        {
+            try
+            {
+                byte[] bytes = queue.poll( 100, TimeUnit.MILLISECONDS );
+                if ( bytes == null )
+                {
+                    continue;
+                }
+
+                target.write( bytes );
+                if ( logFile != null )
+                {
+                    logFile.write( bytes );
+                }
+
+                if ( queue.isEmpty() )
+                {
+                    target.flush();
+                    if ( logFile != null )
+                    {
+                        logFile.flush();
+                    }
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                return;
+            }
+            catch ( IOException e )
+            {
+                // the console went away; keep draining so writers never block.
+            }
+        }
+    }
+
+    private void spill()
+    {
+        OutputStream out = null;
+        try
+        {
+            while ( !closed || !spillQueue.isEmpty() )
+            {
+                try
+                {
+                    byte[] bytes = spillQueue.poll( 100, TimeUnit.MILLISECONDS );
+                    if ( bytes == null )
+                    {
+                        continue;
+                    }
+
+                    if ( out == null )
+                    {
+                        out = new FileOutputStream( spillFile, true );
+                    }
+                    out.write( bytes );
+                }
+                catch ( InterruptedException e )
+                {
+                    return;
+                }
+                catch ( IOException e )
+                {
+                    // the spill file can't be written; keep draining so writers never block.
+                }
+            }
+        }
+        finally
+        {
+            if ( out != null )
+            {
+                try
+                {
+                    out.close();
+                }
+                catch ( IOException e )
+                {
+                    // ignore
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Detects changes below a set of files and directories by comparing the size and modification time of every file
+ * with those seen on the previous scan.
+ */
+public class ChangeScanner
+{
+
+    private final List<File> roots = new ArrayList<File>();
+
+    private Map<String, String> snapshot = new HashMap<String, String>();
+
+    public void addRoot( File root )
+    {
+        if ( root != null )
+        {
+            roots.add( root );
+        }
+    }
+
+    /**
+     * Record the current state of all roots, without reporting changes.
+     */
+    public void reset()
+    {
+        snapshot = takeSnapshot();
+    }
+
+    /**
+     * @return the paths that were added, changed or removed since the last scan; empty if nothing changed.
+     */
+    public List<String> scan()
+    {
+        Map<String, String> current = takeSnapshot();
+        List<String> changed = new ArrayList<String>();
+
+        for ( Map.Entry<String, String> entry : current.entrySet() )
+        {
+            if ( !entry.getValue().equals( snapshot.get( entry.getKey() ) ) )
+            {
+                changed.add( entry.getKey() );
+            }
+        }
+        for ( String path : snapshot.keySet() )
+        {
+            if ( !current.containsKey( path ) )
+            {
+                changed.add( path );
+            }
+        }
+
+        snapshot = current;
+        return changed;
+    }
+
+    private Map<String, String> takeSnapshot()
+    {
+        Map<String, String> result = new HashMap<String, String>();
+        for ( File root : roots )
+        {
+            walk( root, result );
+        }
+        return result;
+    }
+
+    private void walk( File file, Map<String, String> result )
+    {
+        if ( file.isDirectory() )
+        {
+            File[] children = file.listFiles();
+            if ( children != null )
+            {
+                for ( File child : children )
+                {
+                    walk( child, result );
+                }
+            }
+        }
+        else if ( file.isFile() )
+        {
+            result.put( file.getAbsolutePath(), file.length() + ":" + file.lastModified() );
+        }
+    }
+
+}
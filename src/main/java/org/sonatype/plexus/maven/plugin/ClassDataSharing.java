@@ -0,0 +1,257 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Dynamic class data sharing archive for one classpath fingerprint. Launches for a fingerprint go through three
+ * stages:
+ * <ol>
+ * <li>a plain run without class data sharing, whose ready time is the baseline for reporting the time saved;</li>
+ * <li>a training run that dumps the classes it loaded when it exits (<code>-XX:ArchiveClassesAtExit</code>);</li>
+ * <li>launches that map the archive (<code>-XX:SharedArchiveFile</code>).</li>
+ * </ol>
+ * The training run dumps to a temporary file and holds a lock file until its process is gone (see
+ * {@link ForkedAppLauncher}), since the dump is written after the control port closed. The next launch renames the
+ * dump to the archive once it can take that lock, so no JVM ever maps a half-written archive. Archives of other
+ * fingerprints are deleted, so a changed classpath never runs with a stale archive.
+ */
+public class ClassDataSharing
+{
+
+    private static final String ARCHIVE_EXTENSION = ".jsa";
+
+    private static final String DUMP_EXTENSION = ".jsa.tmp";
+
+    private static final String LOCK_EXTENSION = ".lock";
+
+    private static final String BASELINE_EXTENSION = ".baseline";
+
+    private static final String[] EXTENSIONS =
+        new String[] { ARCHIVE_EXTENSION, DUMP_EXTENSION, LOCK_EXTENSION, BASELINE_EXTENSION };
+
+    private static final long DUMP_TIMEOUT = 30000;
+
+    private static final int BASELINE = 0;
+
+    private static final int TRAINING = 1;
+
+    private static final int SHARING = 2;
+
+    private final File archive;
+
+    private final File dump;
+
+    private final File lock;
+
+    private final File baseline;
+
+    private int stage = BASELINE;
+
+    public ClassDataSharing( File dir, String fingerprint )
+    {
+        this.archive = new File( dir, fingerprint + ARCHIVE_EXTENSION );
+        this.dump = new File( dir, fingerprint + DUMP_EXTENSION );
+        this.lock = new File( dir, fingerprint + LOCK_EXTENSION );
+        this.baseline = new File( dir, fingerprint + BASELINE_EXTENSION );
+    }
+
+    public File getArchive()
+    {
+        return archive;
+    }
+
+    /**
+     * @return the file the training run must hold a lock on until its process exits.
+     */
+    public File getLockFile()
+    {
+        return lock;
+    }
+
+    /**
+     * @return true if this launch is the plain run that measures the baseline ready time.
+     */
+    public boolean isBaseline()
+    {
+        return stage == BASELINE;
+    }
+
+    /**
+     * @return true if this launch dumps the archive rather than using it.
+     */
+    public boolean isTraining()
+    {
+        return stage == TRAINING;
+    }
+
+    /**
+     * @return the JVM option for this launch, or null if it runs without class data sharing.
+     */
+    public String getJvmOption()
+    {
+        switch ( stage )
+        {
+            case TRAINING:
+                return "-XX:ArchiveClassesAtExit=" + dump.getAbsolutePath();
+            case SHARING:
+                return "-XX:SharedArchiveFile=" + archive.getAbsolutePath();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Create the archive directory, remove the files of any other fingerprint, take over the dump of a finished
+     * training run, and decide the stage of this launch.
+     */
+    public void prepare()
+        throws IOException
+    {
+        File dir = archive.getParentFile();
+        FileUtils.forceMkdir( dir );
+
+        File[] files = dir.listFiles();
+        if ( files != null )
+        {
+            for ( File file : files )
+            {
+                if ( isOwned( file ) && !file.equals( archive ) && !file.equals( dump ) && !file.equals( lock )
+                    && !file.equals( baseline ) )
+                {
+                    file.delete();
+                }
+            }
+        }
+
+        if ( dump.isFile() && awaitDumpWritten() )
+        {
+            archive.delete();
+            if ( dump.length() == 0 || !dump.renameTo( archive ) )
+            {
+                dump.delete();
+            }
+        }
+
+        if ( archive.isFile() && archive.length() > 0 )
+        {
+            stage = SHARING;
+        }
+        else if ( baseline.isFile() && !dump.isFile() )
+        {
+            stage = TRAINING;
+        }
+        else
+        {
+            // no baseline yet, or the training run is still writing its dump: run without class data sharing.
+            stage = BASELINE;
+        }
+    }
+
+    /**
+     * Remember how long the plain run took to become ready, to report the time saved by launches with the archive.
+     */
+    public void recordBaselineTime( long readyMillis )
+        throws IOException
+    {
+        FileUtils.fileWrite( baseline.getAbsolutePath(), String.valueOf( readyMillis ) );
+    }
+
+    /**
+     * @return the ready time of the plain run, or -1 if it wasn't recorded.
+     */
+    public long getBaselineTime()
+    {
+        if ( !baseline.isFile() )
+        {
+            return -1;
+        }
+
+        try
+        {
+            return Long.parseLong( FileUtils.fileRead( baseline.getAbsolutePath() ).trim() );
+        }
+        catch ( IOException e )
+        {
+            return -1;
+        }
+        catch ( NumberFormatException e )
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * Wait until the training run's process released the lock file, which it only does by exiting.
+     *
+     * @return true if the dump is complete, false if the training run is still running after the timeout.
+     */
+    private boolean awaitDumpWritten()
+        throws IOException
+    {
+        long deadline = System.currentTimeMillis() + DUMP_TIMEOUT;
+        RandomAccessFile file = new RandomAccessFile( lock, "rw" );
+        try
+        {
+            while ( true )
+            {
+                FileLock acquired = file.getChannel().tryLock();
+                if ( acquired != null )
+                {
+                    acquired.release();
+                    return true;
+                }
+                if ( System.currentTimeMillis() > deadline )
+                {
+                    return false;
+                }
+
+                try
+                {
+                    Thread.sleep( 100 );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+
+    private static boolean isOwned( File file )
+    {
+        for ( String extension : EXTENSIONS )
+        {
+            if ( file.getName().endsWith( extension ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * SHA-1 digest over everything that determines the realm of a forked application. Files contribute their path, size
+ * and modification time only, so computing a fingerprint never reads file contents.
+ */
+public class ClasspathFingerprint
+{
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final MessageDigest digest;
+
+    public ClasspathFingerprint()
+    {
+        try
+        {
+            digest = MessageDigest.getInstance( "SHA-1" );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( "SHA-1 is not available in this JVM: " + e.getMessage() );
+        }
+    }
+
+    public ClasspathFingerprint add( String key, Object value )
+    {
+        update( key );
+        update( value == null ? "<null>" : value.toString() );
+        return this;
+    }
+
+    public ClasspathFingerprint addFile( String key, File file )
+    {
+        update( key );
+        update( file.getAbsolutePath() );
+        update( file.length() + ":" + file.lastModified() );
+        return this;
+    }
+
+    /**
+     * Add every file below the directory, in a stable order.
+     */
+    public ClasspathFingerprint addTree( String key, File dir )
+    {
+        update( key );
+        File[] children = dir.listFiles();
+        if ( children != null )
+        {
+            Arrays.sort( children );
+            for ( File child : children )
+            {
+                if ( child.isDirectory() )
+                {
+                    addTree( key, child );
+                }
+                else
+                {
+                    addFile( key, child );
+                }
+            }
+        }
+        return this;
+    }
+
+    public ClasspathFingerprint addMap( String key, Map<String, String> values )
+    {
+        update( key );
+        if ( values != null )
+        {
+            // sort, so the digest doesn't depend on the iteration order of the configured map.
+            for ( Map.Entry<String, String> entry : new TreeMap<String, String>( values ).entrySet() )
+            {
+                update( entry.getKey() );
+                update( entry.getValue() );
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return the hex-encoded digest. The fingerprint can't be extended afterwards.
+     */
+    public String finish()
+    {
+        return toHex( digest.digest() );
+    }
+
+    static String toHex( byte[] bytes )
+    {
+        char[] out = new char[bytes.length * 2];
+        for ( int i = 0; i < bytes.length; i++ )
+        {
+            out[i * 2] = HEX[( bytes[i] >> 4 ) & 0xf];
+            out[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String( out );
+    }
+
+    private void update( String value )
+    {
+        try
+        {
+            digest.update( String.valueOf( value ).getBytes( "UTF-8" ) );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( "UTF-8 is not supported: " + e.getMessage() );
+        }
+        // separator, so ("ab", "c") and ("a", "bc") don't collide.
+        digest.update( (byte) 0 );
+    }
+
+}
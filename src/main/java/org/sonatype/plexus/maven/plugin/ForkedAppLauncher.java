@@ -0,0 +1,257 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.channels.FileLock;
+
+/**
+ * Main class of the forked application when the plugin needs to set up the forked JVM before the Plexus container
+ * starts. It runs inside the application realm, configures itself from the <code>plx.*</code> system properties passed
+ * by the plugin, and then hands over to the configured launcher class (normally PlexusContainerHost).
+ * <p>
+ * This class and the classes it uses must not depend on anything but the JDK, since the forked realm doesn't contain
+ * the Maven or plugin dependencies.
+ */
+public final class ForkedAppLauncher
+{
+
+    public static final String DELEGATE = "plx.launcher.delegate";
+
+    public static final String PID_FILE = "plx.pidFile";
+
+    public static final String LAUNCH_TOKEN = "plx.launchToken";
+
+    public static final String METRICS_PORT = "plx.metricsPort";
+
+    public static final String OUTPUT_BUFFER_LINES = "plx.output.bufferLines";
+
+    public static final String OUTPUT_OVERFLOW = "plx.output.overflow";
+
+    public static final String OUTPUT_FILE = "plx.output.file";
+
+    public static final String OUTPUT_MAX_FILE_SIZE = "plx.output.maxFileSize";
+
+    public static final String OUTPUT_MAX_FILES = "plx.output.maxFiles";
+
+    public static final String OUTPUT_ROLL_INTERVAL = "plx.output.rollInterval";
+
+    public static final String OUTPUT_SPILL_FILE = "plx.output.spillFile";
+
+    public static final String CDS_LOCK_FILE = "plx.cds.lockFile";
+
+    private static final long DRAIN_TIMEOUT = 2000;
+
+    /**
+     * Held for the lifetime of the process; only the operating system releases it, once the process is gone.
+     */
+    private static FileLock cdsLock;
+
+    private ForkedAppLauncher()
+    {
+    }
+
+    public static void main( String[] args )
+        throws Throwable
+    {
+        String delegate = System.getProperty( DELEGATE );
+        if ( delegate == null )
+        {
+            throw new IllegalStateException( "No launcher class given in system property: " + DELEGATE );
+        }
+
+        String pidFile = System.getProperty( PID_FILE );
+        if ( pidFile != null )
+        {
+            writePid( new File( pidFile ) );
+        }
+
+        String cdsLockFile = System.getProperty( CDS_LOCK_FILE );
+        if ( cdsLockFile != null )
+        {
+            // the class data sharing dump is written after the shutdown hooks ran, so only the end of the process
+            // tells the plugin that it's complete.
+            cdsLock = new RandomAccessFile( cdsLockFile, "rw" ).getChannel().lock();
+        }
+
+        if ( System.getProperty( OUTPUT_BUFFER_LINES ) != null )
+        {
+            installOutputCapture();
+        }
+
+        Integer metricsPort = Integer.getInteger( METRICS_PORT );
+        if ( metricsPort != null )
+        {
+            RuntimeMetrics.serve( metricsPort.intValue() );
+        }
+
+        invoke( delegate, args );
+    }
+
+    /**
+     * Write the id of this process, followed by its launch token, so plx:stop can confirm it exited and kill it if it
+     * doesn't. The token is also on this process's command line, which tells this process apart from a later one that
+     * reuses the id.
+     */
+    private static void writePid( File file )
+        throws IOException
+    {
+        // the runtime name is "pid@host" on all common JVMs.
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        int at = name.indexOf( '@' );
+        if ( at < 1 )
+        {
+            return;
+        }
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        if ( !dir.isDirectory() && !dir.mkdirs() )
+        {
+            throw new IOException( "Cannot create directory for pid file: " + dir );
+        }
+
+        Writer writer = new FileWriter( file );
+        try
+        {
+            writer.write( name.substring( 0, at ) );
+            String token = System.getProperty( LAUNCH_TOKEN );
+            if ( token != null )
+            {
+                writer.write( "\n" + token );
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+        file.deleteOnExit();
+    }
+
+    private static void installOutputCapture()
+    {
+        final PrintStream originalErr = System.err;
+
+        int capacity = Integer.getInteger( OUTPUT_BUFFER_LINES, 10000 ).intValue();
+        String overflow = System.getProperty( OUTPUT_OVERFLOW, AsyncOutputStream.DROP );
+
+        File spillFile = new File( System.getProperty( OUTPUT_SPILL_FILE, "plx-output.spill" ) );
+
+        RollingLogFile logFile = null;
+        String path = System.getProperty( OUTPUT_FILE );
+        if ( path != null && path.length() > 0 )
+        {
+            logFile =
+                new RollingLogFile( new File( path ), Long.getLong( OUTPUT_MAX_FILE_SIZE, 0 ).longValue(),
+                                    Integer.getInteger( OUTPUT_MAX_FILES, 5 ).intValue(),
+                                    Long.getLong( OUTPUT_ROLL_INTERVAL, 0 ).longValue() );
+        }
+
+        final AsyncOutputStream out =
+            new AsyncOutputStream( "out", System.out, capacity, overflow, logFile, spillFile );
+        final AsyncOutputStream err =
+            new AsyncOutputStream( "err", System.err, capacity, overflow, logFile, spillFile );
+        final RollingLogFile log = logFile;
+
+        // no auto-flush: it would flush after every print(), queuing each fragment of a line as a line of its own.
+        System.setOut( new PrintStream( out, false ) );
+        System.setErr( new PrintStream( err, false ) );
+
+        Runtime.getRuntime().addShutdownHook( new Thread( "plx-output-shutdown" )
+        {
+            @Override
+            public void run()
+            {
+                out.close( DRAIN_TIMEOUT );
+                err.close( DRAIN_TIMEOUT );
+
+                long dropped = out.getDropped() + err.getDropped();
+                long spilled = out.getSpilled() + err.getSpilled();
+                if ( dropped > 0 || spilled > 0 )
+                {
+                    originalErr.println( "[plx] Application output overflowed: " + dropped + " line(s) dropped, "
+                        + spilled + " line(s) spilled." );
+                }
+
+                if ( log != null )
+                {
+                    try
+                    {
+                        log.close();
+                    }
+                    catch ( IOException e )
+                    {
+                        // ignore
+                    }
+                }
+            }
+        } );
+    }
+
+    private static void invoke( String delegate, String[] args )
+        throws Throwable
+    {
+        ClassLoader loader = ForkedAppLauncher.class.getClassLoader();
+        Class<?> main = Class.forName( delegate, true, loader );
+
+        try
+        {
+            // classworlds' enhanced main( String[], ClassWorld ) takes precedence, as it does in the classworlds
+            // launcher.
+            Object world = getWorld( loader );
+            if ( world != null )
+            {
+                for ( Method method : main.getMethods() )
+                {
+                    Class<?>[] params = method.getParameterTypes();
+                    if ( "main".equals( method.getName() ) && Modifier.isStatic( method.getModifiers() )
+                        && params.length == 2 && params[0] == String[].class && params[1].isInstance( world ) )
+                    {
+                        method.invoke( null, new Object[] { args, world } );
+                        return;
+                    }
+                }
+            }
+
+            main.getMethod( "main", new Class[] { String[].class } ).invoke( null, new Object[] { args } );
+        }
+        catch ( InvocationTargetException e )
+        {
+            throw e.getTargetException();
+        }
+    }
+
+    private static Object getWorld( ClassLoader loader )
+    {
+        try
+        {
+            return loader.getClass().getMethod( "getWorld", new Class[0] ).invoke( loader, new Object[0] );
+        }
+        catch ( Exception e )
+        {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Properties file listing the applications started by one build, with the ports needed to reach each of them and
+ * the file holding each one's process id.
+ */
+public class InstanceRegistry
+{
+
+    private static final String PREFIX = "instance.";
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    public synchronized void add( Entry entry )
+    {
+        entries.add( entry );
+    }
+
+    public synchronized List<Entry> getEntries()
+    {
+        return new ArrayList<Entry>( entries );
+    }
+
+    public synchronized void write( File file )
+        throws IOException
+    {
+        Properties props = new Properties();
+        props.setProperty( PREFIX + "count", String.valueOf( entries.size() ) );
+        for ( int i = 0; i < entries.size(); i++ )
+        {
+            Entry entry = entries.get( i );
+            String key = PREFIX + i + ".";
+            props.setProperty( key + "id", entry.getId() );
+            props.setProperty( key + "controlPort", String.valueOf( entry.getControlPort() ) );
+            props.setProperty( key + "debugPort", String.valueOf( entry.getDebugPort() ) );
+            props.setProperty( key + "metricsPort", String.valueOf( entry.getMetricsPort() ) );
+            props.setProperty( key + "basedir", entry.getBasedir().getAbsolutePath() );
+            props.setProperty( key + "readyMillis", String.valueOf( entry.getReadyMillis() ) );
+            if ( entry.getPidFile() != null )
+            {
+                props.setProperty( key + "pidFile", entry.getPidFile().getAbsolutePath() );
+            }
+        }
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        if ( !dir.isDirectory() && !dir.mkdirs() )
+        {
+            throw new IOException( "Cannot create directory for instance registry: " + dir );
+        }
+
+        OutputStream out = null;
+        try
+        {
+            out = new FileOutputStream( file );
+            props.store( out, "plexus applications started by plx:run or plx:run-all" );
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+    }
+
+    public static InstanceRegistry read( File file )
+        throws IOException
+    {
+        Properties props = new Properties();
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( file );
+            props.load( in );
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        InstanceRegistry registry = new InstanceRegistry();
+        try
+        {
+            int count = Integer.parseInt( props.getProperty( PREFIX + "count", "0" ) );
+            for ( int i = 0; i < count; i++ )
+            {
+                String key = PREFIX + i + ".";
+                Entry entry = new Entry( props.getProperty( key + "id" ) );
+                entry.setControlPort( Integer.parseInt( props.getProperty( key + "controlPort" ) ) );
+                entry.setDebugPort( Integer.parseInt( props.getProperty( key + "debugPort", "-1" ) ) );
+                entry.setMetricsPort( Integer.parseInt( props.getProperty( key + "metricsPort", "-1" ) ) );
+                entry.setBasedir( new File( props.getProperty( key + "basedir", "." ) ) );
+                entry.setReadyMillis( Long.parseLong( props.getProperty( key + "readyMillis", "-1" ) ) );
+                if ( props.getProperty( key + "pidFile" ) != null )
+                {
+                    entry.setPidFile( new File( props.getProperty( key + "pidFile" ) ) );
+                }
+                registry.add( entry );
+            }
+        }
+        catch ( NumberFormatException e )
+        {
+            throw new IOException( "Corrupt instance registry: " + file + " (" + e.getMessage() + ")" );
+        }
+
+        return registry;
+    }
+
+    public static class Entry
+    {
+        private final String id;
+
+        private int controlPort;
+
+        private int debugPort = -1;
+
+        private int metricsPort = -1;
+
+        private File basedir;
+
+        private long readyMillis = -1;
+
+        private File pidFile;
+
+        public Entry( String id )
+        {
+            this.id = id;
+        }
+
+        public String getId()
+        {
+            return id;
+        }
+
+        public int getControlPort()
+        {
+            return controlPort;
+        }
+
+        public void setControlPort( int controlPort )
+        {
+            this.controlPort = controlPort;
+        }
+
+        public int getDebugPort()
+        {
+            return debugPort;
+        }
+
+        public void setDebugPort( int debugPort )
+        {
+            this.debugPort = debugPort;
+        }
+
+        public int getMetricsPort()
+        {
+            return metricsPort;
+        }
+
+        public void setMetricsPort( int metricsPort )
+        {
+            this.metricsPort = metricsPort;
+        }
+
+        public File getBasedir()
+        {
+            return basedir;
+        }
+
+        public void setBasedir( File basedir )
+        {
+            this.basedir = basedir;
+        }
+
+        public long getReadyMillis()
+        {
+            return readyMillis;
+        }
+
+        public void setReadyMillis( long readyMillis )
+        {
+            this.readyMillis = readyMillis;
+        }
+
+        public File getPidFile()
+        {
+            return pidFile;
+        }
+
+        public void setPidFile( File pidFile )
+        {
+            this.pidFile = pidFile;
+        }
+    }
+
+}
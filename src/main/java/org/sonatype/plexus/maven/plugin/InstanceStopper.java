@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.sonatype.appbooter.ctl.ControlConnectionException;
+import org.sonatype.appbooter.ctl.ControllerClient;
+
+/**
+ * Shuts a forked application down through its control port and waits until it has actually exited: the control port
+ * is released and, if its process id is known, the process is gone. An application that accepted the shutdown command
+ * but doesn't exit in time can be killed. Since process ids are reused, the process id is only trusted while the
+ * process still carries the launch token written next to it.
+ */
+public class InstanceStopper
+{
+
+    private static final long KILL_TIMEOUT = 10000;
+
+    private final long timeout;
+
+    private final boolean forceKill;
+
+    /**
+     * @param timeout milliseconds to wait for the application to exit after the shutdown command.
+     * @param forceKill kill the process if it doesn't exit in time and its process id is known.
+     */
+    public InstanceStopper( long timeout, boolean forceKill )
+    {
+        this.timeout = timeout;
+        this.forceKill = forceKill;
+    }
+
+    /**
+     * @param pidFile file holding the process id and launch token of the application, or null.
+     * @return true if the application had to be killed.
+     */
+    public boolean stop( int controlPort, File pidFile )
+        throws MojoExecutionException
+    {
+        String pid = ProcessControl.readPid( pidFile );
+        String token = ProcessControl.readLaunchToken( pidFile );
+        if ( pid != null && ( token == null || !ProcessControl.isLaunchedWith( pid, token ) ) )
+        {
+            // left behind by a process that is gone; the id may belong to an unrelated process by now.
+            pid = null;
+        }
+
+        ControllerClient client = null;
+        try
+        {
+            client = new ControllerClient( controlPort );
+            client.shutdown();
+        }
+        catch ( ControlConnectionException e )
+        {
+            // nothing is killed then: without the command accepted, there is no evidence that the process behind the
+            // process id is the application.
+            throw new MojoExecutionException( "Failed to connect to plexus application for shutdown.", e );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Failed to connect to plexus application for shutdown.", e );
+        }
+        finally
+        {
+            if ( client != null )
+            {
+                client.close();
+            }
+        }
+
+        if ( awaitExit( controlPort, pid, token, timeout ) )
+        {
+            deletePidFile( pidFile );
+            return false;
+        }
+
+        if ( !forceKill || pid == null || !ProcessControl.isLaunchedWith( pid, token ) )
+        {
+            throw new MojoExecutionException( "Plexus application on control port " + controlPort
+                + " did not exit within " + timeout + "ms of shutdown"
+                + ( pid == null ? " (process id unknown, cannot kill it)." : "." ) );
+        }
+
+        ProcessControl.kill( pid );
+        if ( !awaitExit( controlPort, pid, token, KILL_TIMEOUT ) )
+        {
+            throw new MojoExecutionException( "Plexus application on control port " + controlPort + " (process "
+                + pid + ") is still running after being killed." );
+        }
+
+        deletePidFile( pidFile );
+        return true;
+    }
+
+    private boolean awaitExit( int controlPort, String pid, String token, long wait )
+        throws MojoExecutionException
+    {
+        long deadline = System.currentTimeMillis() + wait;
+        while ( isRunning( controlPort, pid, token ) )
+        {
+            if ( System.currentTimeMillis() > deadline )
+            {
+                return false;
+            }
+            try
+            {
+                Thread.sleep( 100 );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException( "Interrupted while waiting for the plexus application to exit." );
+            }
+        }
+        return true;
+    }
+
+    private static boolean isRunning( int controlPort, String pid, String token )
+    {
+        return ReadinessProbe.isListening( "localhost", controlPort )
+            || ( pid != null && ProcessControl.isLaunchedWith( pid, token ) );
+    }
+
+    private static void deletePidFile( File pidFile )
+    {
+        if ( pidFile != null )
+        {
+            pidFile.delete();
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Named set of JVM options and system properties for the forked application, selected with
+ * <code>launchProfile</code>. Built-in profiles:
+ * <ul>
+ * <li><code>dev-fast-start</code>: C1 only, serial GC and a small heap, for the quickest possible startup.</li>
+ * <li><code>debug-with-jit</code>: debug mode through <code>-agentlib:jdwp</code>, with the JIT compilers left on.</li>
+ * <li><code>throughput</code>: parallel GC and a heap of 512 MB growing up to 2 GB, for load tests.</li>
+ * </ul>
+ * The throughput heap is bounded, and not pre-touched, so that several applications started by plx:run-all fit on a
+ * developer machine; a configured profile can size it for the load test host. The other profiles give heap sizes as a
+ * percentage of the memory available to the JVM, which respects container limits on Linux, where container support is
+ * on by default. The built-in profiles need Java 10 (or 8u191) or newer. More profiles can be configured with
+ * <code>launchProfiles</code>; a configured profile replaces the built-in one with the same id.
+ */
+public class LaunchProfile
+{
+
+    /**
+     * Debug agent used by the profiles; '@DEBUG_SUSPEND@' and '@DEBUG_PORT@' are substituted as in
+     * <code>debugJavaCmd</code>.
+     */
+    public static final String DEBUG_AGENT =
+        "-agentlib:jdwp=transport=dt_socket,server=y,suspend=@DEBUG_SUSPEND@,address=@DEBUG_PORT@";
+
+    public static final LaunchProfile DEV_FAST_START =
+        new LaunchProfile( "dev-fast-start", "-XX:TieredStopAtLevel=1 -XX:+UseSerialGC -XX:MaxRAMPercentage=25 "
+            + "-Xshare:auto", false,
+                           Collections.singletonMap( "java.security.egd", "file:/dev/./urandom" ) );
+
+    public static final LaunchProfile DEBUG_WITH_JIT =
+        new LaunchProfile( "debug-with-jit", "-XX:+UseG1GC -XX:MaxRAMPercentage=50", true, null );
+
+    public static final LaunchProfile THROUGHPUT =
+        new LaunchProfile( "throughput", "-XX:+UseParallelGC -Xms512m -Xmx2g", false, null );
+
+    private static final List<LaunchProfile> BUILT_IN = Arrays.asList( DEV_FAST_START, DEBUG_WITH_JIT, THROUGHPUT );
+
+    private String id;
+
+    private String jvmOptions;
+
+    private boolean debug;
+
+    private Map<String, String> systemProperties;
+
+    public LaunchProfile( String id, String jvmOptions, boolean debug, Map<String, String> systemProperties )
+    {
+        this.id = id;
+        this.jvmOptions = jvmOptions;
+        this.debug = debug;
+        this.systemProperties = systemProperties;
+    }
+
+    public LaunchProfile()
+    {
+    }
+
+    /**
+     * @param configured profiles from the plugin configuration, may be null.
+     * @return the profile with the given id, or null if there is none.
+     */
+    public static LaunchProfile find( String id, List<LaunchProfile> configured )
+    {
+        if ( configured != null )
+        {
+            for ( LaunchProfile profile : configured )
+            {
+                if ( id.equals( profile.getId() ) )
+                {
+                    return profile;
+                }
+            }
+        }
+        for ( LaunchProfile profile : BUILT_IN )
+        {
+            if ( id.equals( profile.getId() ) )
+            {
+                return profile;
+            }
+        }
+        return null;
+    }
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public void setId( String id )
+    {
+        this.id = id;
+    }
+
+    /**
+     * @return JVM options added to the java command, separated by spaces; may be null.
+     */
+    public String getJvmOptions()
+    {
+        return jvmOptions;
+    }
+
+    public void setJvmOptions( String jvmOptions )
+    {
+        this.jvmOptions = jvmOptions;
+    }
+
+    /**
+     * @return true if the profile starts the application in debug mode, with {@link #DEBUG_AGENT}.
+     */
+    public boolean isDebug()
+    {
+        return debug;
+    }
+
+    public void setDebug( boolean debug )
+    {
+        this.debug = debug;
+    }
+
+    /**
+     * @return system properties for the application; the ones in <code>systemProperties</code> take precedence.
+     */
+    public Map<String, String> getSystemProperties()
+    {
+        return systemProperties == null ? new HashMap<String, String>() : systemProperties;
+    }
+
+    public void setSystemProperties( Map<String, String> systemProperties )
+    {
+        this.systemProperties = systemProperties;
+    }
+
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Manifest-only jar whose <code>Class-Path</code> lists the realm entries, so the realm configuration passed to the
+ * forked application holds a single entry however many dependencies the project has. The class loader of the realm
+ * follows the <code>Class-Path</code> attribute, as any URLClassLoader does. Pathing jars are stored under a
+ * {@link ClasspathFingerprint} of the <code>Class-Path</code> they hold, so a jar is only reused for the exact same
+ * entries.
+ */
+public class PathingJar
+{
+
+    private static final String PREFIX = "pathing-";
+
+    private static final String EXTENSION = ".jar";
+
+    private final File dir;
+
+    public PathingJar( File dir )
+    {
+        this.dir = dir;
+    }
+
+    /**
+     * @return the pathing jar for the entries, written first if it doesn't exist yet.
+     */
+    public File getJar( List<String> entries )
+        throws IOException
+    {
+        String classPath = toClassPath( entries );
+        String fingerprint = new ClasspathFingerprint().add( "classPath", classPath ).finish();
+
+        File jar = new File( dir, PREFIX + fingerprint + EXTENSION );
+        if ( jar.isFile() )
+        {
+            return jar;
+        }
+
+        if ( !dir.isDirectory() && !dir.mkdirs() )
+        {
+            throw new IOException( "Cannot create pathing jar directory: " + dir );
+        }
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put( Attributes.Name.MANIFEST_VERSION, "1.0" );
+        manifest.getMainAttributes().put( Attributes.Name.CLASS_PATH, classPath );
+
+        File tmp = new File( dir, PREFIX + fingerprint + EXTENSION + ".tmp" );
+        JarOutputStream out = null;
+        try
+        {
+            out = new JarOutputStream( new FileOutputStream( tmp ), manifest );
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+
+        // write-then-rename, so a concurrent or interrupted run never loads a truncated jar.
+        if ( ( jar.exists() && !jar.delete() ) || !tmp.renameTo( jar ) )
+        {
+            tmp.delete();
+            throw new IOException( "Cannot write pathing jar: " + jar );
+        }
+
+        File[] stale = dir.listFiles();
+        if ( stale != null )
+        {
+            for ( File f : stale )
+            {
+                if ( f.getName().startsWith( PREFIX ) && f.getName().endsWith( EXTENSION ) && !f.equals( jar ) )
+                {
+                    f.delete();
+                }
+            }
+        }
+
+        return jar;
+    }
+
+    /**
+     * @return true if the realm entry is a plain path that can go into the <code>Class-Path</code>, rather than a load
+     *         pattern with wildcards.
+     */
+    public static boolean isPath( String entry )
+    {
+        return entry.indexOf( '*' ) < 0;
+    }
+
+    private static String toClassPath( List<String> entries )
+    {
+        StringBuilder sb = new StringBuilder();
+        for ( String entry : entries )
+        {
+            File file = new File( entry ).getAbsoluteFile();
+            String url = file.toURI().toString();
+            // directories must end with a slash, even if they don't exist (yet), or they are taken for jars.
+            if ( !file.isFile() && !url.endsWith( "/" ) )
+            {
+                url += "/";
+            }
+
+            if ( sb.length() > 0 )
+            {
+                sb.append( ' ' );
+            }
+            sb.append( url );
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,320 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Local copy of resolved platform jars, each stored next to a manifest holding its SHA-1 checksum, the size and
+ * timestamp of the local repository file it was copied from, and the time it was last validated against the
+ * repositories. A copy is only used while that local repository file is unchanged, so a platform just installed with
+ * <code>mvn install</code> is picked up right away. Release platforms never need re-validation against the remote
+ * repositories; snapshots are re-resolved once the re-validation interval has passed. Platforms verified during this
+ * build are remembered in memory, so the modules of a reactor verify each platform jar only once.
+ * <p>
+ * The cache is shared by concurrent builds: files are written under unique temporary names and renamed into place,
+ * and a manifest that can't be read is a cache miss.
+ */
+public class PlatformCache
+{
+
+    private static final String MANIFEST = "platform.properties";
+
+    private static final String SHA1 = "sha1";
+
+    private static final String VALIDATED = "validated";
+
+    private static final String SOURCE = "source";
+
+    private static final String SOURCE_SIZE = "sourceSize";
+
+    private static final String SOURCE_MODIFIED = "sourceModified";
+
+    private static final Set<File> VERIFIED = new HashSet<File>();
+
+    private final File cacheDir;
+
+    private final long revalidateInterval;
+
+    public PlatformCache( File cacheDir, long revalidateInterval )
+    {
+        this.cacheDir = cacheDir;
+        this.revalidateInterval = revalidateInterval;
+    }
+
+    /**
+     * @param allowStale return the cached jar even if it is due for re-validation. If the local repository file
+     *            changed, the cache is refreshed from it instead of going back to the repositories.
+     * @return the verified cached jar, or null if it's missing, corrupt, out of date with the local repository, or due
+     *         for re-validation.
+     */
+    public File lookup( String groupId, String artifactId, String version, boolean allowStale )
+        throws IOException
+    {
+        File dir = getDirectory( groupId, artifactId, version );
+        File jar = new File( dir, artifactId + "-" + version + ".jar" );
+        File manifestFile = new File( dir, MANIFEST );
+        if ( !jar.isFile() || !manifestFile.isFile() )
+        {
+            return null;
+        }
+
+        Properties manifest = readManifest( manifestFile );
+        if ( manifest == null )
+        {
+            return null;
+        }
+
+        File source = new File( manifest.getProperty( SOURCE, "" ) );
+        if ( isChanged( manifest, source ) )
+        {
+            return allowStale && source.isFile() ? store( groupId, artifactId, version, source ) : null;
+        }
+
+        if ( !allowStale && isSnapshot( version ) )
+        {
+            long validated;
+            try
+            {
+                validated = Long.parseLong( manifest.getProperty( VALIDATED, "0" ) );
+            }
+            catch ( NumberFormatException e )
+            {
+                return null;
+            }
+            if ( System.currentTimeMillis() - validated > revalidateInterval )
+            {
+                return null;
+            }
+        }
+
+        synchronized ( VERIFIED )
+        {
+            if ( VERIFIED.contains( jar ) )
+            {
+                return jar;
+            }
+
+            if ( !checksum( jar ).equals( manifest.getProperty( SHA1 ) ) )
+            {
+                return null;
+            }
+
+            VERIFIED.add( jar );
+        }
+
+        return jar;
+    }
+
+    /**
+     * @return the local repository file the cached jar was copied from, or null if nothing is cached.
+     */
+    public File getSource( String groupId, String artifactId, String version )
+        throws IOException
+    {
+        File manifestFile = new File( getDirectory( groupId, artifactId, version ), MANIFEST );
+        if ( !manifestFile.isFile() )
+        {
+            return null;
+        }
+
+        Properties manifest = readManifest( manifestFile );
+        String source = manifest == null ? null : manifest.getProperty( SOURCE );
+        return source == null ? null : new File( source );
+    }
+
+    /**
+     * Copy a freshly resolved platform jar into the cache, and record its checksum and validation time.
+     *
+     * @return the cached copy.
+     */
+    public File store( String groupId, String artifactId, String version, File resolved )
+        throws IOException
+    {
+        File dir = getDirectory( groupId, artifactId, version );
+        FileUtils.forceMkdir( dir );
+
+        File jar = new File( dir, artifactId + "-" + version + ".jar" );
+        File tmp = File.createTempFile( jar.getName() + ".", ".tmp", dir );
+        String sha1;
+        try
+        {
+            FileUtils.copyFile( resolved, tmp );
+            sha1 = checksum( tmp );
+            replace( tmp, jar );
+        }
+        finally
+        {
+            // only left over if the copy failed.
+            tmp.delete();
+        }
+
+        Properties manifest = new Properties();
+        manifest.setProperty( SHA1, sha1 );
+        manifest.setProperty( VALIDATED, String.valueOf( System.currentTimeMillis() ) );
+        manifest.setProperty( SOURCE, resolved.getAbsolutePath() );
+        manifest.setProperty( SOURCE_SIZE, String.valueOf( resolved.length() ) );
+        manifest.setProperty( SOURCE_MODIFIED, String.valueOf( resolved.lastModified() ) );
+
+        File manifestTmp = File.createTempFile( MANIFEST + ".", ".tmp", dir );
+        try
+        {
+            OutputStream out = null;
+            try
+            {
+                out = new FileOutputStream( manifestTmp );
+                manifest.store( out, "plexus platform " + groupId + ":" + artifactId + ":" + version );
+            }
+            finally
+            {
+                IOUtil.close( out );
+            }
+            replace( manifestTmp, new File( dir, MANIFEST ) );
+        }
+        finally
+        {
+            manifestTmp.delete();
+        }
+
+        synchronized ( VERIFIED )
+        {
+            VERIFIED.add( jar );
+        }
+
+        return jar;
+    }
+
+    /**
+     * Move a fully written temporary file into place. Readers see either the old or the new file, except where the
+     * file system can't rename over an existing file; then they briefly see none, which is a cache miss.
+     */
+    private static void replace( File tmp, File target )
+        throws IOException
+    {
+        if ( tmp.renameTo( target ) )
+        {
+            return;
+        }
+
+        target.delete();
+        if ( !tmp.renameTo( target ) )
+        {
+            throw new IOException( "Cannot write cached platform file: " + target );
+        }
+    }
+
+    /**
+     * @return true if the local repository file the copy was made from has been replaced since; a file that is gone
+     *         leaves the copy valid.
+     */
+    private static boolean isChanged( Properties manifest, File source )
+    {
+        if ( manifest.getProperty( SOURCE_SIZE ) == null || manifest.getProperty( SOURCE_MODIFIED ) == null )
+        {
+            // written before sources were tracked.
+            return true;
+        }
+
+        if ( !source.isFile() )
+        {
+            return false;
+        }
+
+        return !String.valueOf( source.length() ).equals( manifest.getProperty( SOURCE_SIZE ) )
+            || !String.valueOf( source.lastModified() ).equals( manifest.getProperty( SOURCE_MODIFIED ) );
+    }
+
+    static boolean isSnapshot( String version )
+    {
+        return version != null && version.endsWith( "SNAPSHOT" );
+    }
+
+    static String checksum( File file )
+        throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance( "SHA-1" );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( "SHA-1 is not available in this JVM: " + e.getMessage() );
+        }
+
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( file );
+            byte[] buffer = new byte[8192];
+            int read;
+            while ( ( read = in.read( buffer ) ) > -1 )
+            {
+                digest.update( buffer, 0, read );
+            }
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        return ClasspathFingerprint.toHex( digest.digest() );
+    }
+
+    private File getDirectory( String groupId, String artifactId, String version )
+    {
+        return new File( cacheDir, groupId + File.separator + artifactId + File.separator + version );
+    }
+
+    /**
+     * @return the manifest, or null if it is malformed.
+     */
+    private Properties readManifest( File manifestFile )
+        throws IOException
+    {
+        Properties manifest = new Properties();
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( manifestFile );
+            manifest.load( in );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // a malformed escape sequence.
+            return null;
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+        return manifest;
+    }
+
+}
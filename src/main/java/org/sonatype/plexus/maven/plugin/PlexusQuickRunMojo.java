@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.model.Resource;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Start a Plexus application exactly like plx:run, but without first running the lifecycle up to the test phase. The
+ * compiled classes (and test classes, with <code>includeTestClasspath</code>) must be newer than their sources,
+ * resources and the pom; otherwise the goal fails and lists what is stale, and plx:run must be used instead.
+ *
+ * @goal quick-run
+ * @requiresDependencyResolution test
+ */
+public class PlexusQuickRunMojo
+    extends AbstractPlexusProjectRunMojo
+{
+
+    @Override
+    public void execute()
+        throws MojoExecutionException, MojoFailureException
+    {
+        List<String> stale = getStaleOutputs();
+        if ( !stale.isEmpty() )
+        {
+            throw new MojoFailureException( "Build outputs are not up to date; run plx:run (or compile first):\n  "
+                + StringUtils.join( stale.toArray(), "\n  " ) );
+        }
+
+        getLog().info( "Build outputs are up to date; skipping the test lifecycle." );
+        super.execute();
+    }
+
+    private List<String> getStaleOutputs()
+    {
+        MavenProject project = getProject();
+        UpToDateCheck check = new UpToDateCheck();
+
+        List<File> mainSources = toFiles( project.getCompileSourceRoots() );
+        mainSources.addAll( getResourceDirectories( project.getResources() ) );
+        if ( project.getFile() != null )
+        {
+            mainSources.add( project.getFile() );
+        }
+        check.addOutput( getClasses(), mainSources );
+
+        if ( isIncludeTestClasspath() )
+        {
+            List<File> testSources = toFiles( project.getTestCompileSourceRoots() );
+            testSources.addAll( getResourceDirectories( project.getTestResources() ) );
+            check.addOutput( getTestClasses(), testSources );
+        }
+
+        return check.findStale();
+    }
+
+    private static List<File> toFiles( List<?> paths )
+    {
+        List<File> files = new ArrayList<File>();
+        if ( paths != null )
+        {
+            for ( Object path : paths )
+            {
+                files.add( new File( (String) path ) );
+            }
+        }
+        return files;
+    }
+
+    private static List<File> getResourceDirectories( List<?> resources )
+    {
+        List<File> files = new ArrayList<File>();
+        if ( resources != null )
+        {
+            for ( Object resource : resources )
+            {
+                files.add( new File( ( (Resource) resource ).getDirectory() ) );
+            }
+        }
+        return files;
+    }
+
+}
@@ -0,0 +1,300 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionException;
+import org.apache.maven.artifact.resolver.ArtifactResolutionResult;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.artifact.InvalidDependencyVersionException;
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Start every Plexus application of the reactor concurrently, and return once all of them are ready. A module is an
+ * application if it has a plexus configuration (<code>src/main/plexus/plexus.xml</code> by default). Each application
+ * gets a free control port (and debug port, in debug mode), and the ports are written to a registry file that plx:stop
+ * can read to shut all of them down again.
+ * <p>
+ * Modules other than the one Maven was started in are resolved against the local and remote repositories, so sibling
+ * modules must have been installed (or be part of the same invocation, e.g. <code>mvn install plx:run-all</code>).
+ *
+ * @goal run-all
+ * @aggregator
+ * @requiresDependencyResolution test
+ */
+public class PlexusRunAllMojo
+    extends AbstractPlexusRunMojo
+{
+
+    /**
+     * @parameter expression="${reactorProjects}"
+     * @required
+     * @readonly
+     */
+    private List<MavenProject> reactorProjects;
+
+    /** @parameter expression="${project}" */
+    private MavenProject project;
+
+    /**
+     * Path of the plexus configuration, relative to each module's basedir. Modules without it are skipped.
+     *
+     * @parameter default-value="src/main/plexus/plexus.xml"
+     */
+    private String configurationPath;
+
+    /**
+     * Artifact ids of the modules to start. By default every module with a plexus configuration is started.
+     *
+     * @parameter
+     */
+    private List<String> modules;
+
+    /**
+     * Maximum number of applications being launched at the same time.
+     *
+     * @parameter default-value="4" expression="${plx.threads}"
+     */
+    private int threads;
+
+    /**
+     * @component role="org.apache.maven.artifact.metadata.ArtifactMetadataSource" roleHint="maven"
+     */
+    private ArtifactMetadataSource metadataSource;
+
+    @Override
+    protected boolean isWaitForReady()
+    {
+        // the registry is only written once every application answers, so always probe rather than sleep.
+        return true;
+    }
+
+    @Override
+    protected boolean isSharedReadinessChecked()
+    {
+        // once the first application binds them, every later one would be reported ready before it started.
+        return false;
+    }
+
+    public void execute()
+        throws MojoExecutionException, MojoFailureException
+    {
+        List<AppInstance> instances = createInstances();
+        if ( instances.isEmpty() )
+        {
+            getLog().info( "No plexus applications found in the reactor." );
+            return;
+        }
+
+        if ( hasSharedReadinessChecks() )
+        {
+            getLog().warn( "readinessPort and readinessUrl are ignored by run-all; applications are ready once their "
+                + "control ports accept connections." );
+        }
+
+        // before any booter is created, so no module's lifecycle time includes another module's setup.
+        for ( AppInstance instance : instances )
+        {
+            recordLifecycleTime( instance );
+        }
+
+        // resolution isn't thread-safe, so resolve platforms and realms up front and only fork in parallel.
+        List<MavenForkedAppBooter> booters = new ArrayList<MavenForkedAppBooter>();
+        for ( AppInstance instance : instances )
+        {
+            booters.add( createBooter( instance, true ) );
+        }
+
+        long start = System.currentTimeMillis();
+        InstanceRegistry registry = new InstanceRegistry();
+        ExecutorService executor = Executors.newFixedThreadPool( Math.max( 1, Math.min( threads, instances.size() ) ) );
+        try
+        {
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for ( int i = 0; i < instances.size(); i++ )
+            {
+                final AppInstance instance = instances.get( i );
+                final MavenForkedAppBooter booter = booters.get( i );
+                results.add( executor.submit( new Callable<Object>()
+                {
+                    public Object call()
+                        throws Exception
+                    {
+                        startBooter( instance, booter );
+                        awaitReadiness( instance, createReadinessProbe( instance ) );
+                        reportStartup( instance );
+                        checkBudgets( instance );
+                        return null;
+                    }
+                } ) );
+            }
+
+            List<String> failures = new ArrayList<String>();
+            for ( int i = 0; i < instances.size(); i++ )
+            {
+                AppInstance instance = instances.get( i );
+                try
+                {
+                    results.get( i ).get();
+                    registry.add( createRegistryEntry( instance ) );
+                }
+                catch ( ExecutionException e )
+                {
+                    failures.add( instance.getId() + ": " + e.getCause().getMessage() );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    failures.add( instance.getId() + ": interrupted" );
+                }
+            }
+
+            if ( !failures.isEmpty() )
+            {
+                // don't leave the healthy half of the environment running without a registry to find it.
+                stopAll( instances );
+                throw new MojoFailureException( "Failed to start " + failures.size() + " plexus application(s):\n  "
+                    + StringUtils.join( failures.toArray(), "\n  " ) );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        writeRegistry( registry );
+
+        getLog().info( "Started " + instances.size() + " plexus application(s) in "
+            + ( System.currentTimeMillis() - start ) + "ms. Registry: " + getRegistryFile() );
+    }
+
+    private List<AppInstance> createInstances()
+        throws MojoExecutionException
+    {
+        PortAllocator ports = new PortAllocator();
+        List<AppInstance> instances = new ArrayList<AppInstance>();
+        for ( MavenProject module : reactorProjects )
+        {
+            File configuration = new File( module.getBasedir(), configurationPath );
+            if ( "pom".equals( module.getPackaging() ) || !configuration.isFile() )
+            {
+                continue;
+            }
+            if ( modules != null && !modules.isEmpty() && !modules.contains( module.getArtifactId() ) )
+            {
+                continue;
+            }
+
+            AppInstance instance = new AppInstance();
+            instance.setId( module.getId() );
+            instance.setBasedir( module.getBasedir() );
+            instance.setConfiguration( configuration );
+            instance.setTargetDir( new File( module.getBuild().getDirectory() ) );
+            instance.setClasses( new File( module.getBuild().getOutputDirectory() ) );
+            instance.setTestClasses( new File( module.getBuild().getTestOutputDirectory() ) );
+            instance.setArtifacts( getTestArtifacts( module ) );
+            instance.setManagedVersionMap( getManagedVersionMap( module ) );
+
+            try
+            {
+                instance.setControlPort( ports.allocate() );
+                instance.setDebugPort( isDebug() ? ports.allocate() : -1 );
+            }
+            catch ( IOException e )
+            {
+                throw new MojoExecutionException( "Failed to allocate ports for: " + module.getId(), e );
+            }
+            assignMetricsPort( instance, ports, false );
+
+            instances.add( instance );
+        }
+        return instances;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private Map<String, Artifact> getManagedVersionMap( MavenProject module )
+    {
+        return module.getManagedVersionMap();
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private List<Artifact> getTestArtifacts( MavenProject module )
+        throws MojoExecutionException
+    {
+        if ( module == project )
+        {
+            // already resolved by @requiresDependencyResolution.
+            return module.getTestArtifacts();
+        }
+
+        try
+        {
+            Set<Artifact> dependencies = module.createArtifacts( getFactory(), null, null );
+            ArtifactResolutionResult result =
+                getResolver().resolveTransitively( dependencies, module.getArtifact(), module.getManagedVersionMap(),
+                                                   getLocalRepository(), module.getRemoteArtifactRepositories(),
+                                                   metadataSource );
+            return new ArrayList<Artifact>( result.getArtifacts() );
+        }
+        catch ( InvalidDependencyVersionException e )
+        {
+            throw new MojoExecutionException( "Invalid dependency version in: " + module.getId(), e );
+        }
+        catch ( ArtifactResolutionException e )
+        {
+            throw new MojoExecutionException( "Failed to resolve dependencies of: " + module.getId(), e );
+        }
+        catch ( ArtifactNotFoundException e )
+        {
+            throw new MojoExecutionException( "Cannot find dependencies of: " + module.getId(), e );
+        }
+    }
+
+    private void stopAll( List<AppInstance> instances )
+    {
+        for ( AppInstance instance : instances )
+        {
+            if ( ReadinessProbe.isListening( "localhost", instance.getControlPort() ) )
+            {
+                try
+                {
+                    shutdownForkedApp( instance );
+                }
+                catch ( MojoExecutionException e )
+                {
+                    getLog().warn( "Failed to stop: " + instance.getId() + ": " + e.getMessage() );
+                }
+            }
+        }
+    }
+
+}
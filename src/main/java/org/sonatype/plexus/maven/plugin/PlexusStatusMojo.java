@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import org.apache.maven.plugin.Mojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Print the runtime metrics (heap, garbage collection, threads, loaded classes, uptime and resident set size) of
+ * running Plexus applications that were started with a <code>metricsPort</code>, and optionally write them as JSON.
+ * The applications are taken from <code>metricsPorts</code> if given, otherwise from the registry written by plx:run
+ * (with <code>disableBlocking</code>) or plx:run-all.
+ *
+ * @goal status
+ * @requiresProject false
+ */
+public class PlexusStatusMojo
+    implements Mojo
+{
+
+    private static final long MB = 1024 * 1024;
+
+    private Log log;
+
+    /**
+     * Comma-separated list of metrics ports of applications to query.
+     *
+     * @parameter expression="${plx.metricsPorts}"
+     */
+    private String metricsPorts;
+
+    /**
+     * Registry of started applications, used when no metrics port is given.
+     *
+     * @parameter default-value="${project.build.directory}/plx-instances.properties" expression="${plx.registryFile}"
+     */
+    private File registryFile;
+
+    /**
+     * If set, the metrics of all applications are also written to this file as JSON.
+     *
+     * @parameter expression="${plx.statusFile}"
+     */
+    private File statusFile;
+
+    /**
+     * Milliseconds to wait for each application to answer.
+     *
+     * @parameter default-value="5000" expression="${plx.statusTimeout}"
+     */
+    private int timeout;
+
+    public void execute()
+        throws MojoExecutionException, MojoFailureException
+    {
+        List<InstanceRegistry.Entry> entries = new ArrayList<InstanceRegistry.Entry>();
+        if ( metricsPorts != null && metricsPorts.trim().length() > 0 )
+        {
+            for ( String port : metricsPorts.split( "," ) )
+            {
+                InstanceRegistry.Entry entry = new InstanceRegistry.Entry( "metrics port " + port.trim() );
+                try
+                {
+                    entry.setMetricsPort( Integer.parseInt( port.trim() ) );
+                }
+                catch ( NumberFormatException e )
+                {
+                    throw new MojoExecutionException( "Invalid metrics port: '" + port.trim() + "'." );
+                }
+                entries.add( entry );
+            }
+        }
+        else if ( registryFile != null && registryFile.isFile() )
+        {
+            try
+            {
+                for ( InstanceRegistry.Entry entry : InstanceRegistry.read( registryFile ).getEntries() )
+                {
+                    if ( entry.getMetricsPort() > -1 )
+                    {
+                        entries.add( entry );
+                    }
+                }
+            }
+            catch ( IOException e )
+            {
+                throw new MojoExecutionException( "Failed to read instance registry: " + registryFile, e );
+            }
+        }
+
+        if ( entries.isEmpty() )
+        {
+            throw new MojoFailureException( "No running plexus application with a metrics port found. Start it with "
+                + "-Dplx.metricsPort=0, or pass -Dplx.metricsPorts." );
+        }
+
+        StringBuilder json = new StringBuilder( "[" );
+        for ( InstanceRegistry.Entry entry : entries )
+        {
+            Properties metrics;
+            try
+            {
+                metrics = RuntimeMetrics.fetch( entry.getMetricsPort(), timeout, false );
+            }
+            catch ( IOException e )
+            {
+                throw new MojoExecutionException( "Failed to read metrics of " + entry.getId() + " from port "
+                    + entry.getMetricsPort() + ": " + e.getMessage(), e );
+            }
+
+            getLog().info( entry.getId() + ": " + toSummary( metrics ) );
+
+            json.append( json.length() == 1 ? "\n" : ",\n" );
+            json.append( "  { \"id\": " ).append( StartupTimeline.quote( entry.getId() ) );
+            json.append( ", \"metricsPort\": " ).append( entry.getMetricsPort() );
+            for ( Object key : new TreeSet<Object>( metrics.keySet() ) )
+            {
+                String name = (String) key;
+                json.append( ", " ).append( StartupTimeline.quote( name ) ).append( ": " );
+                json.append( RuntimeMetrics.getLong( metrics, name ) );
+            }
+            json.append( " }" );
+        }
+        json.append( "\n]\n" );
+
+        if ( statusFile != null )
+        {
+            try
+            {
+                FileUtils.forceMkdir( statusFile.getAbsoluteFile().getParentFile() );
+                FileUtils.fileWrite( statusFile.getAbsolutePath(), json.toString() );
+            }
+            catch ( IOException e )
+            {
+                throw new MojoExecutionException( "Failed to write status file: " + statusFile, e );
+            }
+        }
+    }
+
+    private static String toSummary( Properties metrics )
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append( "heap " ).append( RuntimeMetrics.getLong( metrics, RuntimeMetrics.HEAP_USED ) / MB );
+        sb.append( "/" ).append( RuntimeMetrics.getLong( metrics, RuntimeMetrics.HEAP_COMMITTED ) / MB ).append( "MB" );
+        sb.append( ", gc " ).append( RuntimeMetrics.getLong( metrics, RuntimeMetrics.GC_COUNT ) );
+        sb.append( " (" ).append( RuntimeMetrics.getLong( metrics, RuntimeMetrics.GC_TIME ) ).append( "ms)" );
+        sb.append( ", threads " ).append( RuntimeMetrics.getLong( metrics, RuntimeMetrics.THREADS ) );
+        sb.append( ", classes " ).append( RuntimeMetrics.getLong( metrics, RuntimeMetrics.LOADED_CLASSES ) );
+        sb.append( ", uptime " ).append( RuntimeMetrics.getLong( metrics, RuntimeMetrics.UPTIME ) / 1000 ).append( "s" );
+        long rss = RuntimeMetrics.getLong( metrics, RuntimeMetrics.RSS );
+        if ( rss > -1 )
+        {
+            sb.append( ", rss " ).append( rss / MB ).append( "MB" );
+        }
+        return sb.toString();
+    }
+
+    public Log getLog()
+    {
+        return log;
+    }
+
+    public void setLog( Log log )
+    {
+        this.log = log;
+    }
+
+}
@@ -19,18 +19,28 @@ import org.apache.maven.plugin.Mojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.StringUtils;
 import org.sonatype.appbooter.PlexusContainerHost;
-import org.sonatype.appbooter.ctl.ControlConnectionException;
-import org.sonatype.appbooter.ctl.ControllerClient;
 
+import java.io.File;
 import java.io.IOException;
-import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
+ * Stop one or more Plexus applications concurrently, and wait until each of them has exited. The applications are
+ * taken from <code>controlPorts</code> or <code>controlPort</code> if given, otherwise from the registry written by
+ * plx:run (with <code>disableBlocking</code>) or plx:run-all, and otherwise the default control port is used.
+ * Registry entries whose control port doesn't accept connections are left over from earlier runs and skipped; a
+ * registry without any running application is deleted.
+ *
  * @goal stop
  * @requiresProject false
- *
- * @todo Make control ports configurable.
  */
 public class PlexusStopMojo
     implements Mojo
@@ -48,35 +58,192 @@ public class PlexusStopMojo
      */
     private int controlPort;
 
+    /**
+     * Comma-separated list of control ports of applications to stop.
+     *
+     * @parameter expression="${plx.controlPorts}"
+     */
+    private String controlPorts;
+
+    /**
+     * Registry of started applications, used when no control port is given. It is deleted once all of them stopped.
+     *
+     * @parameter default-value="${project.build.directory}/plx-instances.properties" expression="${plx.registryFile}"
+     */
+    private File registryFile;
+
+    /**
+     * Number of milliseconds each application gets to exit after the shutdown command.
+     *
+     * @parameter default-value="30000" expression="${plx.shutdownTimeout}"
+     */
+    private long shutdownTimeout;
+
+    /**
+     * Kill applications that accepted the shutdown command but don't exit within <code>shutdownTimeout</code>. This
+     * has two limitations:
+     * <ul>
+     * <li>It only works for applications found through the registry that were started with <code>writePidFile</code>,
+     * which is off by default. Without a process id, a hanging application fails the build instead.</li>
+     * <li>The process id is only trusted while the command line of that process, as listed by <code>ps</code> (or
+     * <code>wmic</code> on Windows), contains the <code>-Dplx.launchToken</code> system property written next to it.
+     * If the process list truncates or hides the arguments, the application is never killed.</li>
+     * </ul>
+     *
+     * @parameter default-value="false" expression="${plx.forceKill}"
+     */
+    private boolean forceKill;
+
     public void execute()
         throws MojoExecutionException, MojoFailureException
     {
-        getLog().info( "Stopping plexus application." );
-        ControllerClient client = null;
+        boolean fromRegistry = false;
+        List<InstanceRegistry.Entry> entries = null;
+        if ( controlPorts != null && controlPorts.trim().length() > 0 )
+        {
+            entries = new ArrayList<InstanceRegistry.Entry>();
+            for ( String port : controlPorts.split( "," ) )
+            {
+                try
+                {
+                    entries.add( createEntry( Integer.parseInt( port.trim() ) ) );
+                }
+                catch ( NumberFormatException e )
+                {
+                    throw new MojoExecutionException( "Invalid control port: '" + port.trim() + "'." );
+                }
+            }
+        }
+        else if ( controlPort < 0 && registryFile != null && registryFile.isFile() )
+        {
+            entries = readRunningEntries();
+            fromRegistry = entries != null;
+        }
+
+        if ( entries == null )
+        {
+            entries = new ArrayList<InstanceRegistry.Entry>();
+            entries.add( createEntry( controlPort > -1 ? controlPort : PlexusContainerHost.DEFAULT_CONTROL_PORT ) );
+        }
+
+        getLog().info( "Stopping " + entries.size() + " plexus application(s)." );
+
+        long start = System.currentTimeMillis();
+        List<String> failures = new ArrayList<String>();
+        ExecutorService executor = Executors.newFixedThreadPool( Math.max( 1, entries.size() ) );
         try
         {
-            client = new ControllerClient( controlPort > -1 ? controlPort : PlexusContainerHost.DEFAULT_CONTROL_PORT );
-            client.shutdown();
+            final InstanceStopper stopper = new InstanceStopper( shutdownTimeout, forceKill );
+
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for ( final InstanceRegistry.Entry entry : entries )
+            {
+                results.add( executor.submit( new Callable<Object>()
+                {
+                    public Object call()
+                        throws Exception
+                    {
+                        long begin = System.currentTimeMillis();
+                        boolean killed = stopper.stop( entry.getControlPort(), entry.getPidFile() );
+                        long elapsed = System.currentTimeMillis() - begin;
+                        if ( killed )
+                        {
+                            getLog().warn( "Killed " + entry.getId() + " after " + elapsed
+                                + "ms: it did not exit within " + shutdownTimeout + "ms of shutdown." );
+                        }
+                        else
+                        {
+                            getLog().info( "Stopped " + entry.getId() + " in " + elapsed + "ms." );
+                        }
+                        return null;
+                    }
+                } ) );
+            }
+
+            for ( int i = 0; i < entries.size(); i++ )
+            {
+                InstanceRegistry.Entry entry = entries.get( i );
+                try
+                {
+                    results.get( i ).get();
+                }
+                catch ( ExecutionException e )
+                {
+                    failures.add( entry.getId() + ": " + e.getCause().getMessage() );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    failures.add( entry.getId() + ": interrupted" );
+                }
+            }
         }
-        catch ( ControlConnectionException e )
+        finally
         {
-            throw new MojoExecutionException( "Failed to connect to plexus application for shutdown.", e );
+            executor.shutdownNow();
         }
-        catch ( UnknownHostException e )
+
+        if ( !failures.isEmpty() )
         {
-            throw new MojoExecutionException( "Failed to connect to plexus application for shutdown.", e );
+            throw new MojoExecutionException( "Failed to stop " + failures.size() + " plexus application(s):\n  "
+                + StringUtils.join( failures.toArray(), "\n  " ) );
+        }
+
+        if ( fromRegistry )
+        {
+            registryFile.delete();
+        }
+
+        getLog().info( "Stopped " + entries.size() + " plexus application(s) in "
+            + ( System.currentTimeMillis() - start ) + "ms." );
+    }
+
+    /**
+     * @return the registry entries with a listening control port, or null (after deleting the registry) if there are
+     *         none.
+     */
+    private List<InstanceRegistry.Entry> readRunningEntries()
+        throws MojoExecutionException
+    {
+        List<InstanceRegistry.Entry> entries;
+        try
+        {
+            entries = InstanceRegistry.read( registryFile ).getEntries();
         }
         catch ( IOException e )
         {
-            throw new MojoExecutionException( "Failed to connect to plexus application for shutdown.", e );
+            throw new MojoExecutionException( "Failed to read instance registry: " + registryFile, e );
         }
-        finally
+
+        List<InstanceRegistry.Entry> running = new ArrayList<InstanceRegistry.Entry>();
+        for ( InstanceRegistry.Entry entry : entries )
         {
-            if ( client != null )
+            if ( ReadinessProbe.isListening( "localhost", entry.getControlPort() ) )
+            {
+                running.add( entry );
+            }
+            else
             {
-                client.close();
+                getLog().warn( "Skipping " + entry.getId() + " from " + registryFile
+                    + ": nothing listens on control port " + entry.getControlPort() + "." );
             }
         }
+
+        if ( running.isEmpty() )
+        {
+            getLog().warn( "No application in " + registryFile + " is running; deleting it and using the default "
+                + "control port." );
+            registryFile.delete();
+            return null;
+        }
+        return running;
+    }
+
+    private InstanceRegistry.Entry createEntry( int port )
+    {
+        InstanceRegistry.Entry entry = new InstanceRegistry.Entry( "control port " + port );
+        entry.setControlPort( port );
+        return entry;
     }
 
     public Log getLog()
@@ -0,0 +1,294 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Start and stop the application repeatedly, the way integration test suites do with plx:run and plx:stop, and report
+ * the ready and shutdown time percentiles, files left behind in the target directory, processes that had to be
+ * killed, and ports that outlive a shutdown. With a <code>metricsPort</code>, the peak resident set size of each cycle
+ * is reported as well. Optionally fails when ready times trend upwards or something leaks. The report is also written
+ * to <code>${project.build.directory}/plx-stress.json</code>, and the startup phases of the last cycle to
+ * <code>plx-startup.json</code>. The goal doesn't build the project, so run it after the classes are compiled, e.g.
+ * <code>mvn test-compile plx:stress</code>.
+ *
+ * @goal stress
+ * @requiresDependencyResolution test
+ */
+public class PlexusStressMojo
+    extends AbstractPlexusProjectRunMojo
+{
+
+    private static final String REPORT = "plx-stress.json";
+
+    private static final int METRICS_TIMEOUT = 10000;
+
+    private static final long MB = 1024 * 1024;
+
+    /**
+     * Number of start/stop cycles.
+     *
+     * @parameter default-value="10" expression="${plx.stress.cycles}"
+     */
+    private int cycles;
+
+    /**
+     * Fail if the average ready time of the last quarter of the cycles exceeds that of the first quarter by more than
+     * this many percent. -1 disables the check.
+     *
+     * @parameter default-value="-1" expression="${plx.stress.maxTrendPercent}"
+     */
+    private int maxTrendPercent;
+
+    /**
+     * Fail if files pile up in the target directory across cycles, the application has to be killed, or ports are
+     * still open after a shutdown.
+     *
+     * @parameter default-value="false" expression="${plx.stress.failOnLeaks}"
+     */
+    private boolean failOnLeaks;
+
+    @Override
+    protected boolean isWaitForReady()
+    {
+        // cycle times must be measured, not slept.
+        return true;
+    }
+
+    @Override
+    public void execute()
+        throws MojoExecutionException, MojoFailureException
+    {
+        if ( cycles < 1 )
+        {
+            throw new MojoExecutionException( "cycles must be at least 1." );
+        }
+
+        AppInstance instance = createInstance();
+        if ( ReadinessProbe.isListening( "localhost", instance.getControlPort() ) )
+        {
+            throw new MojoExecutionException( "Control port " + instance.getControlPort()
+                + " is already in use; stop the running application first." );
+        }
+
+        Set<String> baseline = listFiles( instance.getTargetDir() );
+        long[] ready = new long[cycles];
+        long[] stop = new long[cycles];
+        int[] leftover = new int[cycles];
+        long[] peakRss = new long[cycles];
+        int lingering = 0;
+        int killed = 0;
+
+        for ( int i = 0; i < cycles; i++ )
+        {
+            instance.setTimeline( new StartupTimeline() );
+            long start = System.currentTimeMillis();
+            try
+            {
+                startBooter( instance, createBooter( instance, true ) );
+                awaitReadiness( instance, createReadinessProbe( instance ) );
+            }
+            catch ( MojoFailureException e )
+            {
+                shutdownForkedApp( instance );
+                throw new MojoFailureException( "Cycle " + ( i + 1 ) + " failed to start: " + e.getMessage() );
+            }
+            ready[i] = System.currentTimeMillis() - start;
+            reportStartup( instance );
+            peakRss[i] = readPeakRssMb( instance );
+
+            start = System.currentTimeMillis();
+            if ( shutdownForkedApp( instance ) )
+            {
+                killed++;
+            }
+            stop[i] = System.currentTimeMillis() - start;
+
+            if ( instance.getMetricsPort() > -1
+                && ReadinessProbe.isListening( RuntimeMetrics.HOST, instance.getMetricsPort() ) )
+            {
+                lingering++;
+            }
+            if ( isDebug() && ReadinessProbe.isListening( "localhost", instance.getDebugPort() ) )
+            {
+                lingering++;
+            }
+
+            Set<String> files = listFiles( instance.getTargetDir() );
+            files.removeAll( baseline );
+            leftover[i] = files.size();
+
+            getLog().info( "Cycle " + ( i + 1 ) + "/" + cycles + ": ready " + ready[i] + "ms, stop " + stop[i]
+                + "ms, " + leftover[i] + " new file(s) in " + instance.getTargetDir()
+                + ( peakRss[i] > -1 ? ", peak rss " + peakRss[i] + "MB" : "" ) );
+        }
+
+        long trend = getTrendPercent( ready );
+        getLog().info( "Ready: " + toPercentiles( ready ) );
+        getLog().info( "Stop:  " + toPercentiles( stop ) );
+        getLog().info( "Ready time trend (last vs first quarter): " + ( trend > 0 ? "+" : "" ) + trend + "%" );
+        getLog().info( "Files left behind: " + leftover[cycles - 1] + ", processes killed: " + killed
+            + ", ports open after shutdown: " + lingering );
+
+        writeReport( instance, ready, stop, leftover, peakRss, killed, lingering, trend );
+
+        if ( maxTrendPercent > -1 && trend > maxTrendPercent )
+        {
+            throw new MojoFailureException( "Ready time grew by " + trend + "% over " + cycles
+                + " cycles; the limit is " + maxTrendPercent + "%." );
+        }
+        if ( failOnLeaks && ( leftover[cycles - 1] > 0 || killed > 0 || lingering > 0 ) )
+        {
+            throw new MojoFailureException( "Start/stop cycles leaked " + leftover[cycles - 1] + " file(s) in "
+                + instance.getTargetDir() + ", had to kill " + killed + " process(es) and left " + lingering
+                + " port(s) open." );
+        }
+    }
+
+    /**
+     * @return the peak resident set size of the application so far in MB, or -1 if it isn't available.
+     */
+    private long readPeakRssMb( AppInstance instance )
+    {
+        if ( instance.getMetricsPort() < 0 )
+        {
+            return -1;
+        }
+
+        try
+        {
+            long bytes =
+                RuntimeMetrics.getLong( RuntimeMetrics.fetch( instance.getMetricsPort(), METRICS_TIMEOUT, false ),
+                                        RuntimeMetrics.PEAK_RSS );
+            return bytes < 0 ? -1 : bytes / MB;
+        }
+        catch ( IOException e )
+        {
+            getLog().warn( "Failed to read metrics of " + instance.getId() + ": " + e.getMessage() );
+            return -1;
+        }
+    }
+
+    /**
+     * @return the names of the files in the directory, except for this plugin's own state and reports.
+     */
+    private static Set<String> listFiles( File dir )
+    {
+        Set<String> names = new HashSet<String>();
+        String[] list = dir.list();
+        if ( list != null )
+        {
+            for ( String name : list )
+            {
+                if ( !name.startsWith( "plx" ) )
+                {
+                    names.add( name );
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @return how much the average of the last quarter of the values exceeds that of the first quarter, in percent.
+     */
+    private static long getTrendPercent( long[] values )
+    {
+        int quarter = Math.max( 1, values.length / 4 );
+        long first = 0;
+        long last = 0;
+        for ( int i = 0; i < quarter; i++ )
+        {
+            first += values[i];
+            last += values[values.length - 1 - i];
+        }
+        return first == 0 ? 0 : ( last - first ) * 100 / first;
+    }
+
+    private static long percentile( long[] sorted, int percent )
+    {
+        int rank = (int) Math.ceil( percent / 100.0 * sorted.length );
+        return sorted[Math.max( 0, rank - 1 )];
+    }
+
+    private static String toPercentiles( long[] values )
+    {
+        long[] sorted = values.clone();
+        Arrays.sort( sorted );
+        return "p50=" + percentile( sorted, 50 ) + "ms p90=" + percentile( sorted, 90 ) + "ms p99="
+            + percentile( sorted, 99 ) + "ms max=" + sorted[sorted.length - 1] + "ms";
+    }
+
+    private static String toJson( long[] values )
+    {
+        long[] sorted = values.clone();
+        Arrays.sort( sorted );
+        return "{ \"p50\": " + percentile( sorted, 50 ) + ", \"p90\": " + percentile( sorted, 90 ) + ", \"p99\": "
+            + percentile( sorted, 99 ) + ", \"max\": " + sorted[sorted.length - 1] + " }";
+    }
+
+    private void writeReport( AppInstance instance, long[] ready, long[] stop, int[] leftover, long[] peakRss,
+                              int killed, int lingering, long trend )
+    {
+        long maxPeakRss = -1;
+        for ( long rss : peakRss )
+        {
+            maxPeakRss = Math.max( maxPeakRss, rss );
+        }
+
+        StringBuilder json = new StringBuilder();
+        json.append( "{\n  \"id\": " ).append( StartupTimeline.quote( instance.getId() ) );
+        json.append( ",\n  \"cycles\": " ).append( ready.length );
+        json.append( ",\n  \"readyMillis\": " ).append( toJson( ready ) );
+        json.append( ",\n  \"stopMillis\": " ).append( toJson( stop ) );
+        json.append( ",\n  \"readyTrendPercent\": " ).append( trend );
+        json.append( ",\n  \"peakRssMb\": " ).append( maxPeakRss );
+        json.append( ",\n  \"leftoverFiles\": " ).append( leftover[leftover.length - 1] );
+        json.append( ",\n  \"killedProcesses\": " ).append( killed );
+        json.append( ",\n  \"lingeringPorts\": " ).append( lingering );
+        json.append( ",\n  \"perCycle\": [" );
+        for ( int i = 0; i < ready.length; i++ )
+        {
+            json.append( i == 0 ? "\n" : ",\n" );
+            json.append( "    { \"readyMillis\": " ).append( ready[i] );
+            json.append( ", \"stopMillis\": " ).append( stop[i] );
+            json.append( ", \"peakRssMb\": " ).append( peakRss[i] );
+            json.append( ", \"leftoverFiles\": " ).append( leftover[i] ).append( " }" );
+        }
+        json.append( "\n  ]\n}\n" );
+
+        File report = new File( instance.getTargetDir(), REPORT );
+        try
+        {
+            FileUtils.forceMkdir( instance.getTargetDir() );
+            FileUtils.fileWrite( report.getAbsolutePath(), json.toString() );
+        }
+        catch ( IOException e )
+        {
+            getLog().warn( "Failed to write stress report: " + report + ": " + e.getMessage() );
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Hands out free local TCP ports, never the same port twice, so that concurrently launched applications don't collide.
+ */
+public class PortAllocator
+{
+
+    private final Set<Integer> allocated = new HashSet<Integer>();
+
+    public synchronized int allocate()
+        throws IOException
+    {
+        while ( true )
+        {
+            ServerSocket socket = new ServerSocket( 0 );
+            int port;
+            try
+            {
+                port = socket.getLocalPort();
+            }
+            finally
+            {
+                socket.close();
+            }
+
+            if ( allocated.add( Integer.valueOf( port ) ) )
+            {
+                return port;
+            }
+        }
+    }
+
+}
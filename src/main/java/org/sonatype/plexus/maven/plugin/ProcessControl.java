@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Checks and kills operating system processes by id, using <code>ps</code>/<code>kill</code> or <code>wmic</code>/
+ * <code>taskkill</code>, since the JDK offers no way to inspect or signal a process it didn't start.
+ */
+public final class ProcessControl
+{
+
+    private static final boolean WINDOWS =
+        System.getProperty( "os.name", "" ).toLowerCase().startsWith( "windows" );
+
+    private ProcessControl()
+    {
+    }
+
+    /**
+     * @return the process id written to <code>pidFile</code> by {@link ForkedAppLauncher}, or null if there is none.
+     */
+    public static String readPid( File pidFile )
+    {
+        return readLine( pidFile, 0 );
+    }
+
+    /**
+     * @return the launch token written to <code>pidFile</code> by {@link ForkedAppLauncher}, or null if there is none.
+     */
+    public static String readLaunchToken( File pidFile )
+    {
+        return readLine( pidFile, 1 );
+    }
+
+    /**
+     * @return true if the process is alive and was started with the given launch token, i.e. it is still the
+     *         application that wrote the process id rather than a process that reused the id. False if the command
+     *         line of the process can't be read.
+     */
+    public static boolean isLaunchedWith( String pid, String token )
+    {
+        String commandLine;
+        if ( WINDOWS )
+        {
+            commandLine =
+                run( new String[] { "wmic", "process", "where", "ProcessId=" + pid, "get", "CommandLine", "/value" } );
+        }
+        else
+        {
+            commandLine = run( new String[] { "ps", "-ww", "-o", "args=", "-p", pid } );
+        }
+        return commandLine != null && commandLine.indexOf( "-D" + ForkedAppLauncher.LAUNCH_TOKEN + "=" + token ) > -1;
+    }
+
+    /**
+     * Forcibly terminate the process, without giving it a chance to clean up.
+     */
+    public static void kill( String pid )
+    {
+        if ( WINDOWS )
+        {
+            run( new String[] { "taskkill", "/F", "/PID", pid } );
+        }
+        else
+        {
+            run( new String[] { "kill", "-9", pid } );
+        }
+    }
+
+    private static String readLine( File pidFile, int idx )
+    {
+        if ( pidFile == null || !pidFile.isFile() )
+        {
+            return null;
+        }
+
+        try
+        {
+            String[] lines = FileUtils.fileRead( pidFile.getAbsolutePath() ).split( "\\s*\n" );
+            String line = idx < lines.length ? lines[idx].trim() : "";
+            return line.length() > 0 ? line : null;
+        }
+        catch ( IOException e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @return the command's output if it exited with 0, otherwise null.
+     */
+    private static String run( String[] command )
+    {
+        Process process = null;
+        try
+        {
+            process = new ProcessBuilder( command ).redirectErrorStream( true ).start();
+            process.getOutputStream().close();
+
+            InputStream in = process.getInputStream();
+            String output;
+            try
+            {
+                output = IOUtil.toString( in );
+            }
+            finally
+            {
+                IOUtil.close( in );
+            }
+
+            return process.waitFor() == 0 ? output : null;
+        }
+        catch ( IOException e )
+        {
+            return null;
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        finally
+        {
+            if ( process != null )
+            {
+                process.destroy();
+            }
+        }
+    }
+
+}
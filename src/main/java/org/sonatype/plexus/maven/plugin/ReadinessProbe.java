@@ -0,0 +1,242 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Polls a forked application until all of its readiness checks pass, backing off exponentially between attempts. The
+ * control port check is always present; TCP and HTTP checks can be added for applications that expose their own
+ * endpoints once the container has started.
+ */
+public class ReadinessProbe
+{
+
+    private static final long INITIAL_INTERVAL = 50;
+
+    private static final long MAX_INTERVAL = 1000;
+
+    private static final int CONNECT_TIMEOUT = 500;
+
+    private final List<Check> checks = new ArrayList<Check>();
+
+    private final long timeout;
+
+    private final Log log;
+
+    private long elapsed;
+
+    private String failure;
+
+    public ReadinessProbe( long timeout, Log log )
+    {
+        this.timeout = timeout;
+        this.log = log;
+    }
+
+    public void addTcpCheck( String host, int port )
+    {
+        checks.add( new TcpCheck( host, port ) );
+    }
+
+    public void addHttpCheck( URL url )
+    {
+        checks.add( new HttpCheck( url ) );
+    }
+
+    /**
+     * Block until every check passes or the timeout expires.
+     *
+     * @return true if the application became ready within the timeout.
+     */
+    public boolean awaitReady()
+    {
+        long start = System.currentTimeMillis();
+        long interval = INITIAL_INTERVAL;
+        int idx = 0;
+
+        while ( true )
+        {
+            // checks are satisfied in order; once one passes it isn't re-tested.
+            while ( idx < checks.size() && checks.get( idx ).isReady() )
+            {
+                if ( log.isDebugEnabled() )
+                {
+                    log.debug( "Readiness check passed: " + checks.get( idx ) );
+                }
+                idx++;
+            }
+
+            elapsed = System.currentTimeMillis() - start;
+            if ( idx == checks.size() )
+            {
+                return true;
+            }
+
+            if ( elapsed + interval > timeout )
+            {
+                failure = checks.get( idx ).toString();
+                return false;
+            }
+
+            try
+            {
+                Thread.sleep( interval );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                failure = checks.get( idx ) + " (interrupted)";
+                return false;
+            }
+
+            interval = Math.min( interval * 2, MAX_INTERVAL );
+        }
+    }
+
+    /**
+     * @return milliseconds spent in the last call to {@link #awaitReady()}.
+     */
+    public long getElapsed()
+    {
+        return elapsed;
+    }
+
+    /**
+     * @return description of the first check that did not pass, or null if the application is ready.
+     */
+    public String getFailure()
+    {
+        return failure;
+    }
+
+    /**
+     * @return true if something accepts TCP connections on the given host and port.
+     */
+    static boolean isListening( String host, int port )
+    {
+        Socket socket = new Socket();
+        try
+        {
+            socket.connect( new InetSocketAddress( host, port ), CONNECT_TIMEOUT );
+            return true;
+        }
+        catch ( IOException e )
+        {
+            return false;
+        }
+        finally
+        {
+            try
+            {
+                socket.close();
+            }
+            catch ( IOException e )
+            {
+                // ignore
+            }
+        }
+    }
+
+    private interface Check
+    {
+        boolean isReady();
+    }
+
+    private static final class TcpCheck
+        implements Check
+    {
+        private final String host;
+
+        private final int port;
+
+        TcpCheck( String host, int port )
+        {
+            this.host = host;
+            this.port = port;
+        }
+
+        public boolean isReady()
+        {
+            return isListening( host, port );
+        }
+
+        @Override
+        public String toString()
+        {
+            return "tcp://" + host + ":" + port;
+        }
+    }
+
+    private static final class HttpCheck
+        implements Check
+    {
+        private final URL url;
+
+        HttpCheck( URL url )
+        {
+            this.url = url;
+        }
+
+        public boolean isReady()
+        {
+            URLConnection conn = null;
+            try
+            {
+                conn = url.openConnection();
+                conn.setConnectTimeout( CONNECT_TIMEOUT );
+                conn.setReadTimeout( CONNECT_TIMEOUT * 4 );
+                conn.setUseCaches( false );
+
+                if ( conn instanceof HttpURLConnection )
+                {
+                    int status = ( (HttpURLConnection) conn ).getResponseCode();
+                    return status >= 200 && status < 400;
+                }
+
+                conn.getInputStream().close();
+                return true;
+            }
+            catch ( IOException e )
+            {
+                return false;
+            }
+            finally
+            {
+                if ( conn instanceof HttpURLConnection )
+                {
+                    ( (HttpURLConnection) conn ).disconnect();
+                }
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return url.toExternalForm();
+        }
+    }
+
+}
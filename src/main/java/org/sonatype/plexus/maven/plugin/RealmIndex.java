@@ -0,0 +1,341 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Index of the classes and resources of a realm, mapping each name to the first entry that provides it, as the realm's
+ * class loader would. Reports classes that later entries provide again, per pair of entries and with the packages
+ * involved, and finds entries that are fully shadowed: everything they contain is found in earlier entries, so
+ * removing them doesn't change what the application loads. Indexes are stored under a fingerprint of the indexed
+ * entries, including the files in directory entries (see {@link #fingerprint(List)}).
+ */
+public class RealmIndex
+{
+
+    static final String INDEX_EXTENSION = ".index";
+
+    private static final String REPORT = "report.";
+
+    private static final String SHADOWED = "shadowed.";
+
+    private static final int MAX_PACKAGES = 5;
+
+    private final List<String> report = new ArrayList<String>();
+
+    private final List<String> shadowed = new ArrayList<String>();
+
+    /**
+     * @return one line per pair of entries that provide the same classes; empty if there are no duplicates.
+     */
+    public List<String> getReport()
+    {
+        return report;
+    }
+
+    /**
+     * @return the entries whose contents are all provided by earlier entries.
+     */
+    public List<String> getShadowed()
+    {
+        return shadowed;
+    }
+
+    /**
+     * Index the realm entries, in realm order. Load patterns with wildcards and missing entries are skipped.
+     */
+    public static RealmIndex build( List<String> entries )
+        throws IOException
+    {
+        RealmIndex index = new RealmIndex();
+        Map<String, String> owners = new HashMap<String, String>();
+
+        for ( String entry : entries )
+        {
+            File file = new File( entry );
+            if ( !PathingJar.isPath( entry ) || !file.exists() )
+            {
+                continue;
+            }
+
+            List<String> names = new ArrayList<String>();
+            if ( file.isDirectory() )
+            {
+                listDirectory( file, "", names );
+            }
+            else
+            {
+                listJar( file, names );
+            }
+
+            // owner entry -> packages of the classes it already provides
+            Map<String, TreeSet<String>> duplicates = new LinkedHashMap<String, TreeSet<String>>();
+            Map<String, Integer> counts = new HashMap<String, Integer>();
+            boolean unique = false;
+            boolean hasContent = false;
+
+            for ( String name : names )
+            {
+                if ( isIgnorable( name ) )
+                {
+                    continue;
+                }
+                hasContent = true;
+
+                String owner = owners.get( name );
+                if ( owner == null )
+                {
+                    owners.put( name, entry );
+                    unique = true;
+                }
+                else if ( name.endsWith( ".class" ) )
+                {
+                    TreeSet<String> packages = duplicates.get( owner );
+                    if ( packages == null )
+                    {
+                        packages = new TreeSet<String>();
+                        duplicates.put( owner, packages );
+                        counts.put( owner, Integer.valueOf( 0 ) );
+                    }
+                    int slash = name.lastIndexOf( '/' );
+                    packages.add( slash < 0 ? "(default)" : name.substring( 0, slash ).replace( '/', '.' ) );
+                    counts.put( owner, Integer.valueOf( counts.get( owner ).intValue() + 1 ) );
+                }
+                else if ( isUniqueResource( name ) )
+                {
+                    // every copy of these is loaded (e.g. META-INF/plexus/components.xml), so it's never shadowed.
+                    unique = true;
+                }
+            }
+
+            for ( Map.Entry<String, TreeSet<String>> duplicate : duplicates.entrySet() )
+            {
+                index.report.add( entry + " repeats " + counts.get( duplicate.getKey() ) + " class(es) of "
+                    + duplicate.getKey() + " in " + toString( duplicate.getValue() ) );
+            }
+
+            if ( hasContent && !unique && file.isFile() )
+            {
+                index.shadowed.add( entry );
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * @return the key an index of the entries is stored under: their order, and the path, size and timestamp of every
+     *         jar and of every file in a directory entry, since a changed class directory can shadow other entries.
+     */
+    public static String fingerprint( List<String> entries )
+    {
+        ClasspathFingerprint fingerprint = new ClasspathFingerprint();
+        for ( String entry : entries )
+        {
+            File file = new File( entry );
+            if ( !PathingJar.isPath( entry ) )
+            {
+                fingerprint.add( "pattern", entry );
+            }
+            else if ( file.isDirectory() )
+            {
+                fingerprint.add( "directory", file.getAbsolutePath() );
+                fingerprint.addTree( "contents", file );
+            }
+            else
+            {
+                fingerprint.addFile( "file", file );
+            }
+        }
+        return fingerprint.finish();
+    }
+
+    /**
+     * @return the index stored for the fingerprint, or null if there is none.
+     */
+    public static RealmIndex load( File cacheDir, String fingerprint )
+        throws IOException
+    {
+        File file = new File( cacheDir, fingerprint + INDEX_EXTENSION );
+        if ( !file.isFile() )
+        {
+            return null;
+        }
+
+        Properties props = new Properties();
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( file );
+            props.load( in );
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        RealmIndex index = new RealmIndex();
+        for ( int i = 0; props.getProperty( REPORT + i ) != null; i++ )
+        {
+            index.report.add( props.getProperty( REPORT + i ) );
+        }
+        for ( int i = 0; props.getProperty( SHADOWED + i ) != null; i++ )
+        {
+            index.shadowed.add( props.getProperty( SHADOWED + i ) );
+        }
+        return index;
+    }
+
+    /**
+     * Store the index for a fingerprint, removing indexes stored for any other fingerprint.
+     */
+    public void store( File cacheDir, String fingerprint )
+        throws IOException
+    {
+        if ( !cacheDir.isDirectory() && !cacheDir.mkdirs() )
+        {
+            throw new IOException( "Cannot create realm cache directory: " + cacheDir );
+        }
+
+        Properties props = new Properties();
+        for ( int i = 0; i < report.size(); i++ )
+        {
+            props.setProperty( REPORT + i, report.get( i ) );
+        }
+        for ( int i = 0; i < shadowed.size(); i++ )
+        {
+            props.setProperty( SHADOWED + i, shadowed.get( i ) );
+        }
+
+        File file = new File( cacheDir, fingerprint + INDEX_EXTENSION );
+        OutputStream out = null;
+        try
+        {
+            out = new FileOutputStream( file );
+            props.store( out, "plexus realm index, fingerprint " + fingerprint );
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+
+        File[] stale = cacheDir.listFiles();
+        if ( stale != null )
+        {
+            for ( File f : stale )
+            {
+                if ( f.getName().endsWith( INDEX_EXTENSION ) && !f.equals( file ) )
+                {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    private static void listJar( File file, List<String> names )
+        throws IOException
+    {
+        ZipFile zip = new ZipFile( file );
+        try
+        {
+            for ( Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); )
+            {
+                ZipEntry zipEntry = e.nextElement();
+                if ( !zipEntry.isDirectory() )
+                {
+                    names.add( zipEntry.getName() );
+                }
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+
+    private static void listDirectory( File dir, String prefix, List<String> names )
+    {
+        File[] children = dir.listFiles();
+        if ( children == null )
+        {
+            return;
+        }
+        for ( File child : children )
+        {
+            if ( child.isDirectory() )
+            {
+                listDirectory( child, prefix + child.getName() + "/", names );
+            }
+            else
+            {
+                names.add( prefix + child.getName() );
+            }
+        }
+    }
+
+    /**
+     * @return true for names that are not compared between entries: jar metadata that says nothing about what the jar
+     *         provides, module descriptors, which every modular jar has, and the release-specific classes of
+     *         multi-release jars, which only replace classes of their own jar.
+     */
+    private static boolean isIgnorable( String name )
+    {
+        return name.equals( "META-INF/MANIFEST.MF" ) || name.equals( "META-INF/INDEX.LIST" )
+            || name.startsWith( "META-INF/maven/" ) || name.startsWith( "META-INF/versions/" )
+            || name.equals( "module-info.class" ) || name.endsWith( ".SF" ) || name.endsWith( ".RSA" )
+            || name.endsWith( ".DSA" );
+    }
+
+    private static boolean isUniqueResource( String name )
+    {
+        return name.startsWith( "META-INF/" ) && !isIgnorable( name );
+    }
+
+    private static String toString( TreeSet<String> packages )
+    {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        for ( String pkg : packages )
+        {
+            if ( i++ == MAX_PACKAGES )
+            {
+                sb.append( ", ..." );
+                break;
+            }
+            sb.append( i == 1 ? "" : ", " ).append( pkg );
+        }
+        return sb.toString();
+    }
+
+}
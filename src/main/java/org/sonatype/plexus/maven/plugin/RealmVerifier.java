@@ -0,0 +1,221 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipFile;
+
+import org.apache.maven.artifact.Artifact;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Checks the artifact files of a realm before the application is forked, so a missing or broken jar fails the build
+ * right away instead of as a class loading error after the container booted. Jars are checked in parallel: each must
+ * open as a zip file and, optionally, match the <code>.sha1</code> file next to it in the local repository. Files
+ * that passed are remembered for the rest of the build, until their size or timestamp changes.
+ */
+public class RealmVerifier
+{
+
+    private static final Map<String, String> VERIFIED = new HashMap<String, String>();
+
+    private static final String SHA1_EXTENSION = ".sha1";
+
+    private final boolean checksums;
+
+    private final int threads;
+
+    /**
+     * @param checksums also compare each jar with its <code>.sha1</code> file, where there is one.
+     */
+    public RealmVerifier( boolean checksums, int threads )
+    {
+        this.checksums = checksums;
+        this.threads = threads;
+    }
+
+    /**
+     * @return the artifacts whose files don't exist.
+     */
+    public List<Artifact> findMissing( List<Artifact> artifacts )
+    {
+        List<Artifact> missing = new ArrayList<Artifact>();
+        for ( Artifact artifact : artifacts )
+        {
+            if ( artifact.getFile() == null || !artifact.getFile().exists() )
+            {
+                missing.add( artifact );
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * @return a description of every artifact file that is not a valid jar or doesn't match its checksum.
+     */
+    public List<String> findCorrupt( List<Artifact> artifacts )
+    {
+        List<File> files = new ArrayList<File>();
+        for ( Artifact artifact : artifacts )
+        {
+            File file = artifact.getFile();
+            if ( file != null && file.isFile() && !isVerified( file ) )
+            {
+                files.add( file );
+            }
+        }
+
+        List<String> corrupt = new ArrayList<String>();
+        if ( files.isEmpty() )
+        {
+            return corrupt;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool( Math.max( 1, Math.min( threads, files.size() ) ) );
+        try
+        {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for ( final File file : files )
+            {
+                results.add( executor.submit( new Callable<String>()
+                {
+                    public String call()
+                    {
+                        return verify( file );
+                    }
+                } ) );
+            }
+
+            for ( int i = 0; i < files.size(); i++ )
+            {
+                try
+                {
+                    String problem = results.get( i ).get();
+                    if ( problem != null )
+                    {
+                        corrupt.add( files.get( i ) + ": " + problem );
+                    }
+                }
+                catch ( ExecutionException e )
+                {
+                    corrupt.add( files.get( i ) + ": " + e.getCause() );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    corrupt.add( files.get( i ) + ": interrupted" );
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        return corrupt;
+    }
+
+    /**
+     * @return the problem with the file, or null if it is fine.
+     */
+    private String verify( File file )
+    {
+        String state = getState( file );
+
+        ZipFile zip = null;
+        try
+        {
+            // opening reads the central directory, which catches truncated and non-zip files.
+            zip = new ZipFile( file );
+        }
+        catch ( IOException e )
+        {
+            return "not a valid jar (" + e.getMessage() + ")";
+        }
+        finally
+        {
+            if ( zip != null )
+            {
+                try
+                {
+                    zip.close();
+                }
+                catch ( IOException e )
+                {
+                    // ignore
+                }
+            }
+        }
+
+        if ( checksums )
+        {
+            File sha1File = new File( file.getPath() + SHA1_EXTENSION );
+            if ( sha1File.isFile() )
+            {
+                try
+                {
+                    String expected = FileUtils.fileRead( sha1File.getAbsolutePath() ).trim();
+                    // some repositories append the file name after the checksum.
+                    int space = expected.indexOf( ' ' );
+                    if ( space > 0 )
+                    {
+                        expected = expected.substring( 0, space );
+                    }
+
+                    String actual = PlatformCache.checksum( file );
+                    if ( !actual.equalsIgnoreCase( expected ) )
+                    {
+                        return "SHA-1 is " + actual + " but " + sha1File.getName() + " says " + expected;
+                    }
+                }
+                catch ( IOException e )
+                {
+                    return "cannot compute checksum (" + e.getMessage() + ")";
+                }
+            }
+        }
+
+        synchronized ( VERIFIED )
+        {
+            VERIFIED.put( file.getAbsolutePath(), state );
+        }
+        return null;
+    }
+
+    private boolean isVerified( File file )
+    {
+        synchronized ( VERIFIED )
+        {
+            return getState( file ).equals( VERIFIED.get( file.getAbsolutePath() ) );
+        }
+    }
+
+    private String getState( File file )
+    {
+        return file.length() + ":" + file.lastModified() + ":" + checksums;
+    }
+
+}
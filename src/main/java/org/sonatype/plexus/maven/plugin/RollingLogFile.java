@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Log file that rolls over to <code>file.1</code> ... <code>file.N</code> when it grows beyond a maximum size or has
+ * been open longer than a maximum interval. Runs inside the forked application.
+ */
+public class RollingLogFile
+{
+
+    private final File file;
+
+    private final long maxSize;
+
+    private final int maxFiles;
+
+    private final long rollInterval;
+
+    private OutputStream out;
+
+    private long size;
+
+    private long openedAt;
+
+    /**
+     * @param maxSize roll once the file would exceed this many bytes; 0 disables size-based rolling.
+     * @param maxFiles number of rolled files kept next to the current one.
+     * @param rollInterval roll once the file has been open this many milliseconds; 0 disables time-based rolling.
+     */
+    public RollingLogFile( File file, long maxSize, int maxFiles, long rollInterval )
+    {
+        this.file = file;
+        this.maxSize = maxSize;
+        this.maxFiles = maxFiles;
+        this.rollInterval = rollInterval;
+    }
+
+    public synchronized void write( byte[] bytes )
+        throws IOException
+    {
+        if ( out == null )
+        {
+            open();
+        }
+        else if ( ( maxSize > 0 && size > 0 && size + bytes.length > maxSize )
+            || ( rollInterval > 0 && System.currentTimeMillis() - openedAt > rollInterval ) )
+        {
+            roll();
+        }
+
+        out.write( bytes );
+        size += bytes.length;
+    }
+
+    public synchronized void flush()
+        throws IOException
+    {
+        if ( out != null )
+        {
+            out.flush();
+        }
+    }
+
+    public synchronized void close()
+        throws IOException
+    {
+        if ( out != null )
+        {
+            out.close();
+            out = null;
+        }
+    }
+
+    private void roll()
+        throws IOException
+    {
+        close();
+
+        File oldest = rolled( maxFiles );
+        if ( oldest.exists() )
+        {
+            oldest.delete();
+        }
+        for ( int i = maxFiles - 1; i > 0; i-- )
+        {
+            File from = rolled( i );
+            if ( from.exists() )
+            {
+                from.renameTo( rolled( i + 1 ) );
+            }
+        }
+        if ( maxFiles > 0 )
+        {
+            file.renameTo( rolled( 1 ) );
+        }
+        else
+        {
+            file.delete();
+        }
+
+        open();
+    }
+
+    private void open()
+        throws IOException
+    {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if ( !dir.isDirectory() && !dir.mkdirs() )
+        {
+            throw new IOException( "Cannot create log directory: " + dir );
+        }
+
+        out = new FileOutputStream( file, true );
+        size = file.length();
+        openedAt = System.currentTimeMillis();
+    }
+
+    private File rolled( int idx )
+    {
+        return new File( file.getPath() + "." + idx );
+    }
+
+}
@@ -0,0 +1,286 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Properties;
+
+/**
+ * Runtime metrics of a forked application: heap, garbage collection, threads, loaded classes, uptime and resident set
+ * size. The forked JVM serves them on a local metrics port (see {@link #serve(int)}); the plugin reads them with
+ * {@link #fetch(int, int, boolean)}. A client connects, sends <code>metrics</code> (or <code>gc</code> to collect garbage
+ * first, for a stable heap figure) on one line, and reads the metrics, written as a properties file.
+ * <p>
+ * Serving the metrics must only depend on the JDK, since it runs in the forked realm.
+ */
+public final class RuntimeMetrics
+{
+
+    public static final String UPTIME = "uptimeMillis";
+
+    public static final String HEAP_USED = "heapUsed";
+
+    public static final String HEAP_COMMITTED = "heapCommitted";
+
+    public static final String HEAP_MAX = "heapMax";
+
+    public static final String NON_HEAP_USED = "nonHeapUsed";
+
+    public static final String GC_COUNT = "gcCount";
+
+    public static final String GC_TIME = "gcTimeMillis";
+
+    public static final String THREADS = "threadCount";
+
+    public static final String PEAK_THREADS = "peakThreadCount";
+
+    public static final String LOADED_CLASSES = "loadedClassCount";
+
+    public static final String RSS = "rssBytes";
+
+    public static final String PEAK_RSS = "peakRssBytes";
+
+    /**
+     * Address the metrics port is bound to. A literal, since "localhost" may resolve to the IPv6 loopback first.
+     */
+    public static final String HOST = "127.0.0.1";
+
+    private static final File PROC_STATUS = new File( "/proc/self/status" );
+
+    private static final String REQUEST_METRICS = "metrics";
+
+    private static final String REQUEST_GC = "gc";
+
+    private static final int REQUEST_TIMEOUT = 2000;
+
+    private RuntimeMetrics()
+    {
+    }
+
+    /**
+     * @return the metrics of this JVM. The current and peak resident set size are only available on Linux.
+     */
+    public static Properties collect()
+    {
+        Properties metrics = new Properties();
+
+        metrics.setProperty( UPTIME, String.valueOf( ManagementFactory.getRuntimeMXBean().getUptime() ) );
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        metrics.setProperty( HEAP_USED, String.valueOf( memory.getHeapMemoryUsage().getUsed() ) );
+        metrics.setProperty( HEAP_COMMITTED, String.valueOf( memory.getHeapMemoryUsage().getCommitted() ) );
+        metrics.setProperty( HEAP_MAX, String.valueOf( memory.getHeapMemoryUsage().getMax() ) );
+        metrics.setProperty( NON_HEAP_USED, String.valueOf( memory.getNonHeapMemoryUsage().getUsed() ) );
+
+        long gcCount = 0;
+        long gcTime = 0;
+        for ( GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans() )
+        {
+            // both are -1 when the collector doesn't track them.
+            gcCount += Math.max( 0, gc.getCollectionCount() );
+            gcTime += Math.max( 0, gc.getCollectionTime() );
+        }
+        metrics.setProperty( GC_COUNT, String.valueOf( gcCount ) );
+        metrics.setProperty( GC_TIME, String.valueOf( gcTime ) );
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        metrics.setProperty( THREADS, String.valueOf( threads.getThreadCount() ) );
+        metrics.setProperty( PEAK_THREADS, String.valueOf( threads.getPeakThreadCount() ) );
+
+        metrics.setProperty( LOADED_CLASSES,
+                             String.valueOf( ManagementFactory.getClassLoadingMXBean().getLoadedClassCount() ) );
+
+        long rss = readStatus( "VmRSS:" );
+        if ( rss > -1 )
+        {
+            metrics.setProperty( RSS, String.valueOf( rss ) );
+        }
+        long peakRss = readStatus( "VmHWM:" );
+        if ( peakRss > -1 )
+        {
+            metrics.setProperty( PEAK_RSS, String.valueOf( peakRss ) );
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Serve the metrics of this JVM on the given local port, from a daemon thread.
+     */
+    public static void serve( int port )
+        throws IOException
+    {
+        final ServerSocket server = new ServerSocket();
+        server.bind( new InetSocketAddress( HOST, port ) );
+
+        Thread thread = new Thread( "plx-metrics" )
+        {
+            @Override
+            public void run()
+            {
+                while ( true )
+                {
+                    Socket socket = null;
+                    try
+                    {
+                        socket = server.accept();
+                        socket.setSoTimeout( REQUEST_TIMEOUT );
+
+                        BufferedReader in =
+                            new BufferedReader( new InputStreamReader( socket.getInputStream(), "ISO-8859-1" ) );
+                        if ( REQUEST_GC.equals( in.readLine() ) )
+                        {
+                            System.gc();
+                        }
+
+                        OutputStream out = socket.getOutputStream();
+                        collect().store( out, null );
+                        out.flush();
+                    }
+                    catch ( IOException e )
+                    {
+                        // the client went away; serve the next one.
+                    }
+                    finally
+                    {
+                        if ( socket != null )
+                        {
+                            try
+                            {
+                                socket.close();
+                            }
+                            catch ( IOException e )
+                            {
+                                // ignore
+                            }
+                        }
+                    }
+                }
+            }
+        };
+        thread.setDaemon( true );
+        thread.start();
+    }
+
+    /**
+     * Read the metrics served by a forked application on the given local port.
+     *
+     * @param gc collect garbage in the application before reading the metrics.
+     */
+    public static Properties fetch( int port, int timeout, boolean gc )
+        throws IOException
+    {
+        Socket socket = new Socket();
+        try
+        {
+            socket.connect( new InetSocketAddress( HOST, port ), timeout );
+            socket.setSoTimeout( timeout );
+
+            OutputStream out = socket.getOutputStream();
+            out.write( ( ( gc ? REQUEST_GC : REQUEST_METRICS ) + "\n" ).getBytes( "ISO-8859-1" ) );
+            out.flush();
+
+            InputStream in = socket.getInputStream();
+            Properties metrics = new Properties();
+            metrics.load( in );
+            return metrics;
+        }
+        finally
+        {
+            socket.close();
+        }
+    }
+
+    /**
+     * @return the value of a metric, or -1 if it is missing.
+     */
+    public static long getLong( Properties metrics, String name )
+    {
+        try
+        {
+            return Long.parseLong( metrics.getProperty( name, "-1" ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the number of bytes of a memory field of <code>/proc/self/status</code>, or -1 if it isn't available.
+     */
+    private static long readStatus( String field )
+    {
+        if ( !PROC_STATUS.isFile() )
+        {
+            return -1;
+        }
+
+        BufferedReader reader = null;
+        try
+        {
+            reader = new BufferedReader( new FileReader( PROC_STATUS ) );
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                // e.g. "VmRSS:	  123456 kB"
+                if ( line.startsWith( field ) )
+                {
+                    String value = line.substring( field.length() ).trim();
+                    int space = value.indexOf( ' ' );
+                    return Long.parseLong( space < 0 ? value : value.substring( 0, space ) ) * 1024;
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            // fall through
+        }
+        catch ( NumberFormatException e )
+        {
+            // fall through
+        }
+        finally
+        {
+            if ( reader != null )
+            {
+                try
+                {
+                    reader.close();
+                }
+                catch ( IOException e )
+                {
+                    // ignore
+                }
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Durations of the phases of one application launch, in the order they happened.
+ */
+public class StartupTimeline
+{
+
+    private final long timestamp = System.currentTimeMillis();
+
+    private final List<String> names = new ArrayList<String>();
+
+    private final List<Long> durations = new ArrayList<Long>();
+
+    /**
+     * Record a phase that started at <code>since</code> and ends now.
+     */
+    public synchronized void record( String phase, long since )
+    {
+        names.add( phase );
+        durations.add( Long.valueOf( System.currentTimeMillis() - since ) );
+    }
+
+    public synchronized long getTotal()
+    {
+        long total = 0;
+        for ( Long duration : durations )
+        {
+            total += duration.longValue();
+        }
+        return total;
+    }
+
+    /**
+     * @return the duration of the named phase, or -1 if it wasn't recorded.
+     */
+    public synchronized long getDuration( String phase )
+    {
+        int idx = names.indexOf( phase );
+        return idx < 0 ? -1 : durations.get( idx ).longValue();
+    }
+
+    /**
+     * @return e.g. <code>platform=3ms realm=12ms fork=180ms ready=1210ms total=1405ms</code>
+     */
+    public synchronized String toSummary()
+    {
+        StringBuilder sb = new StringBuilder();
+        for ( int i = 0; i < names.size(); i++ )
+        {
+            sb.append( names.get( i ) ).append( '=' ).append( durations.get( i ) ).append( "ms " );
+        }
+        return sb.append( "total=" ).append( getTotal() ).append( "ms" ).toString();
+    }
+
+    public synchronized String toJson( String id, String fingerprint )
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append( "{\n  \"id\": " ).append( quote( id ) );
+        sb.append( ",\n  \"fingerprint\": " ).append( quote( fingerprint ) );
+        sb.append( ",\n  \"timestamp\": " ).append( timestamp );
+        sb.append( ",\n  \"totalMillis\": " ).append( getTotal() );
+        sb.append( ",\n  \"phases\": [" );
+        for ( int i = 0; i < names.size(); i++ )
+        {
+            sb.append( i == 0 ? "\n" : ",\n" );
+            sb.append( "    { \"name\": " ).append( quote( names.get( i ) ) );
+            sb.append( ", \"millis\": " ).append( durations.get( i ) ).append( " }" );
+        }
+        return sb.append( "\n  ]\n}\n" ).toString();
+    }
+
+    public void write( File file, String id, String fingerprint )
+        throws IOException
+    {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if ( !dir.isDirectory() && !dir.mkdirs() )
+        {
+            throw new IOException( "Cannot create directory for startup report: " + dir );
+        }
+
+        Writer writer = null;
+        try
+        {
+            writer = new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" );
+            writer.write( toJson( id, fingerprint ) );
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+    }
+
+    static String quote( String value )
+    {
+        if ( value == null )
+        {
+            return "null";
+        }
+
+        StringBuilder sb = new StringBuilder( "\"" );
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            char c = value.charAt( i );
+            switch ( c )
+            {
+                case '"':
+                    sb.append( "\\\"" );
+                    break;
+                case '\\':
+                    sb.append( "\\\\" );
+                    break;
+                case '\n':
+                    sb.append( "\\n" );
+                    break;
+                case '\r':
+                    sb.append( "\\r" );
+                    break;
+                case '\t':
+                    sb.append( "\\t" );
+                    break;
+                default:
+                    if ( c < 0x20 )
+                    {
+                        String hex = Integer.toHexString( c );
+                        sb.append( "\\u" ).append( "0000".substring( hex.length() ) ).append( hex );
+                    }
+                    else
+                    {
+                        sb.append( c );
+                    }
+            }
+        }
+        return sb.append( '"' ).toString();
+    }
+
+}
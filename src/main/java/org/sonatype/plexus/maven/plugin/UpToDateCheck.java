@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides whether build outputs are up to date by comparing timestamps: an output directory is stale if it is missing
+ * while it has sources, or if any of its source files is newer than the newest file in it.
+ */
+public class UpToDateCheck
+{
+
+    private static final int MAX_REPORTED = 10;
+
+    private final List<File> outputs = new ArrayList<File>();
+
+    private final List<List<File>> sources = new ArrayList<List<File>>();
+
+    /**
+     * @param sourceRoots files and directories the output is built from; missing ones are ignored.
+     */
+    public void addOutput( File output, List<File> sourceRoots )
+    {
+        outputs.add( output );
+        sources.add( sourceRoots );
+    }
+
+    /**
+     * @return a description of each stale output and (some of) its newer sources; empty if everything is up to date.
+     */
+    public List<String> findStale()
+    {
+        List<String> stale = new ArrayList<String>();
+        for ( int i = 0; i < outputs.size(); i++ )
+        {
+            File output = outputs.get( i );
+            long built = newest( output, 0 );
+
+            List<String> newer = new ArrayList<String>();
+            for ( File root : sources.get( i ) )
+            {
+                collectNewer( root, built, newer );
+            }
+
+            if ( newer.isEmpty() )
+            {
+                continue;
+            }
+
+            if ( !output.exists() )
+            {
+                stale.add( output + " is missing" );
+                continue;
+            }
+
+            StringBuilder sb = new StringBuilder( output.toString() ).append( " is older than " );
+            sb.append( newer.size() ).append( " source file(s):" );
+            for ( int j = 0; j < newer.size() && j < MAX_REPORTED; j++ )
+            {
+                sb.append( "\n    " ).append( newer.get( j ) );
+            }
+            if ( newer.size() > MAX_REPORTED )
+            {
+                sb.append( "\n    ..." );
+            }
+            stale.add( sb.toString() );
+        }
+        return stale;
+    }
+
+    private static long newest( File file, long newest )
+    {
+        if ( file.isDirectory() )
+        {
+            File[] children = file.listFiles();
+            if ( children != null )
+            {
+                for ( File child : children )
+                {
+                    newest = newest( child, newest );
+                }
+            }
+            return newest;
+        }
+        return file.isFile() ? Math.max( newest, file.lastModified() ) : newest;
+    }
+
+    private static void collectNewer( File file, long since, List<String> newer )
+    {
+        if ( file.isDirectory() )
+        {
+            File[] children = file.listFiles();
+            if ( children != null )
+            {
+                for ( File child : children )
+                {
+                    collectNewer( child, since, newer );
+                }
+            }
+        }
+        else if ( file.isFile() && file.lastModified() > since )
+        {
+            newer.add( file.getAbsolutePath() );
+        }
+    }
+
+}
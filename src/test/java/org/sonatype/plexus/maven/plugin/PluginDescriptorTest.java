@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Checks the generated plugin descriptor: the descriptor extractor inherits class-level tags, so a goal extending
+ * another goal's mojo would silently fork that goal's lifecycle as well.
+ */
+public class PluginDescriptorTest
+    extends TestCase
+{
+
+    private Map<String, Element> mojos;
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        File descriptor = new File( System.getProperty( "basedir", "." ), "target/classes/META-INF/maven/plugin.xml" );
+        assertTrue( "Plugin descriptor not generated: " + descriptor, descriptor.isFile() );
+
+        mojos = new HashMap<String, Element>();
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse( descriptor );
+        NodeList list = document.getElementsByTagName( "mojo" );
+        for ( int i = 0; i < list.getLength(); i++ )
+        {
+            Element mojo = (Element) list.item( i );
+            mojos.put( getText( mojo, "goal" ), mojo );
+        }
+    }
+
+    public void testRunForksTestLifecycle()
+    {
+        assertEquals( "test", getText( getMojo( "run" ), "executePhase" ) );
+    }
+
+    public void testQuickRunDoesNotForkLifecycle()
+    {
+        assertNull( getText( getMojo( "quick-run" ), "executePhase" ) );
+    }
+
+    public void testStressDoesNotForkLifecycle()
+    {
+        assertNull( getText( getMojo( "stress" ), "executePhase" ) );
+    }
+
+    private Element getMojo( String goal )
+    {
+        Element mojo = mojos.get( goal );
+        assertNotNull( "No mojo for goal: " + goal, mojo );
+        return mojo;
+    }
+
+    /**
+     * @return the text of the mojo's direct child element with the given name, or null if it has none.
+     */
+    private static String getText( Element mojo, String name )
+    {
+        NodeList children = mojo.getChildNodes();
+        for ( int i = 0; i < children.getLength(); i++ )
+        {
+            if ( children.item( i ) instanceof Element && name.equals( children.item( i ).getNodeName() ) )
+            {
+                return children.item( i ).getTextContent().trim();
+            }
+        }
+        return null;
+    }
+
+}
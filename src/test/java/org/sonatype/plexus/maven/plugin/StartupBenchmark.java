@@ -0,0 +1,527 @@
+/**
+ * Copyright (C) 2008 Sonatype Inc.
+ * Sonatype Inc, licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.sonatype.plexus.maven.plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+
+/**
+ * End-to-end startup benchmark over synthetic projects with 10, 100 and 1000 dependencies. For each size it generates
+ * a project whose dependencies are jars in a generated file repository, each with a chain of 10 classes and a Plexus
+ * component that the application starts, so every dependency's classes are loaded before it's ready. It then runs
+ * <code>mvn test-compile plx:stress</code> on it with the plugin version under test, and collects from
+ * <code>plx-stress.json</code> and <code>plx-startup.json</code>:
+ * <ul>
+ * <li><code>startupMillis</code>: fork to ready of the first (cold) cycle;</li>
+ * <li><code>restartMillis</code>: median fork to ready of the later cycles;</li>
+ * <li><code>stopMillis</code>: median shutdown time;</li>
+ * <li><code>peakRssMb</code>: highest peak resident set size of any cycle (Linux only);</li>
+ * <li><code>phase.*</code>: the startup phases of the last cycle, including realm generation.</li>
+ * </ul>
+ * The results are written to <code>results-&lt;version&gt;.properties</code> in the benchmark directory. Given the
+ * results of another plugin version with <code>-baseline</code>, the differences are printed next to the new values.
+ * <p>
+ * Install the plugin first, and make sure the platform artifact resolves with the default Maven settings:
+ *
+ * <pre>
+ * mvn install
+ * java -cp target/test-classes org.sonatype.plexus.maven.plugin.StartupBenchmark -version 1.7-SNAPSHOT
+ *     [-sizes 10,100,1000] [-cycles 5] [-dir target/plx-benchmark] [-baseline file] [-mvn mvn]
+ * </pre>
+ *
+ * This class only depends on the JDK, so it runs without the plugin's dependencies on the class path.
+ */
+public final class StartupBenchmark
+{
+
+    private static final String GROUP_ID = "plx.benchmark";
+
+    private static final String DEPENDENCY_VERSION = "1.0";
+
+    private static final int CLASSES_PER_DEPENDENCY = 10;
+
+    private static final Pattern CYCLE =
+        Pattern.compile( "\\{ \"readyMillis\": (\\d+), \"stopMillis\": (\\d+), \"peakRssMb\": (-?\\d+)" );
+
+    private static final Pattern PHASE = Pattern.compile( "\"name\": \"([^\"]+)\", \"millis\": (\\d+)" );
+
+    private final File dir;
+
+    private final String version;
+
+    private final int cycles;
+
+    private final String mvn;
+
+    private StartupBenchmark( File dir, String version, int cycles, String mvn )
+    {
+        this.dir = dir;
+        this.version = version;
+        this.cycles = cycles;
+        this.mvn = mvn;
+    }
+
+    public static void main( String[] args )
+        throws Exception
+    {
+        File dir = new File( "target/plx-benchmark" );
+        String version = null;
+        String sizes = "10,100,1000";
+        int cycles = 5;
+        String mvn = System.getProperty( "os.name" ).startsWith( "Windows" ) ? "mvn.cmd" : "mvn";
+        File baseline = null;
+
+        for ( int i = 0; i + 1 < args.length; i += 2 )
+        {
+            if ( "-dir".equals( args[i] ) )
+            {
+                dir = new File( args[i + 1] );
+            }
+            else if ( "-version".equals( args[i] ) )
+            {
+                version = args[i + 1];
+            }
+            else if ( "-sizes".equals( args[i] ) )
+            {
+                sizes = args[i + 1];
+            }
+            else if ( "-cycles".equals( args[i] ) )
+            {
+                cycles = Integer.parseInt( args[i + 1] );
+            }
+            else if ( "-mvn".equals( args[i] ) )
+            {
+                mvn = args[i + 1];
+            }
+            else if ( "-baseline".equals( args[i] ) )
+            {
+                baseline = new File( args[i + 1] );
+            }
+            else
+            {
+                throw new IllegalArgumentException( "Unknown option: " + args[i] );
+            }
+        }
+        if ( version == null )
+        {
+            throw new IllegalArgumentException( "Give the plugin version to benchmark with -version." );
+        }
+        if ( cycles < 2 )
+        {
+            throw new IllegalArgumentException( "Restart times need at least 2 cycles." );
+        }
+
+        StartupBenchmark benchmark = new StartupBenchmark( dir.getAbsoluteFile(), version, cycles, mvn );
+
+        Properties results = new Properties();
+        results.setProperty( "version", version );
+        results.setProperty( "cycles", String.valueOf( cycles ) );
+        results.setProperty( "java.version", System.getProperty( "java.version" ) );
+        results.setProperty( "os.name", System.getProperty( "os.name" ) );
+        for ( String size : sizes.split( "," ) )
+        {
+            benchmark.run( Integer.parseInt( size.trim() ), results );
+        }
+
+        File file = new File( benchmark.dir, "results-" + version + ".properties" );
+        OutputStream out = new FileOutputStream( file );
+        try
+        {
+            results.store( out, "plx startup benchmark" );
+        }
+        finally
+        {
+            out.close();
+        }
+        System.out.println( "Results written to: " + file );
+
+        print( results, baseline == null ? null : load( baseline ) );
+    }
+
+    /**
+     * Generate and benchmark the project with the given number of dependencies, adding its results prefixed with the
+     * number of dependencies.
+     */
+    private void run( int dependencies, Properties results )
+        throws IOException, InterruptedException
+    {
+        File repository = new File( dir, "repository" );
+        for ( int i = 0; i < dependencies; i++ )
+        {
+            writeDependency( repository, i );
+        }
+
+        File project = new File( dir, "deps-" + dependencies );
+        writeProject( project, repository, dependencies );
+
+        File stressReport = new File( project, "target/plx-stress.json" );
+        File startupReport = new File( project, "target/plx-startup.json" );
+        stressReport.delete();
+        startupReport.delete();
+
+        System.out.println( "Benchmarking " + dependencies + " dependencies, " + cycles + " cycles..." );
+        long start = System.currentTimeMillis();
+        int exit =
+            execute( new File( project, "build.log" ), mvn, "-B", "-f", new File( project, "pom.xml" ).getPath(),
+                     "-Dplx.stress.cycles=" + cycles, "-Dplx.metricsPort=0", "test-compile",
+                     "org.sonatype.plugins:plx-maven-plugin:" + version + ":stress" );
+        if ( exit != 0 || !stressReport.isFile() )
+        {
+            throw new IOException( "Benchmark build with " + dependencies + " dependencies failed (exit code " + exit
+                + "); see " + new File( project, "build.log" ) );
+        }
+
+        String prefix = dependencies + ".";
+        results.setProperty( prefix + "buildMillis", String.valueOf( System.currentTimeMillis() - start ) );
+
+        List<Long> ready = new ArrayList<Long>();
+        List<Long> stop = new ArrayList<Long>();
+        long peakRss = -1;
+        Matcher cycle = CYCLE.matcher( read( stressReport ) );
+        while ( cycle.find() )
+        {
+            ready.add( Long.valueOf( cycle.group( 1 ) ) );
+            stop.add( Long.valueOf( cycle.group( 2 ) ) );
+            peakRss = Math.max( peakRss, Long.parseLong( cycle.group( 3 ) ) );
+        }
+        results.setProperty( prefix + "startupMillis", String.valueOf( ready.get( 0 ) ) );
+        results.setProperty( prefix + "restartMillis", String.valueOf( median( ready.subList( 1, ready.size() ) ) ) );
+        results.setProperty( prefix + "stopMillis", String.valueOf( median( stop ) ) );
+        results.setProperty( prefix + "peakRssMb", String.valueOf( peakRss ) );
+
+        if ( startupReport.isFile() )
+        {
+            Matcher phase = PHASE.matcher( read( startupReport ) );
+            while ( phase.find() )
+            {
+                results.setProperty( prefix + "phase." + phase.group( 1 ), phase.group( 2 ) );
+            }
+        }
+    }
+
+    private static void writeDependency( File repository, int idx )
+        throws IOException
+    {
+        String artifactId = "dep-" + idx;
+        File base = new File( repository, GROUP_ID.replace( '.', '/' ) + "/" + artifactId + "/" + DEPENDENCY_VERSION );
+        File jar = new File( base, artifactId + "-" + DEPENDENCY_VERSION + ".jar" );
+        if ( jar.isFile() )
+        {
+            return;
+        }
+        mkdirs( base );
+
+        write( new File( base, artifactId + "-" + DEPENDENCY_VERSION + ".pom" ), "<project>\n"
+            + "  <modelVersion>4.0.0</modelVersion>\n  <groupId>" + GROUP_ID + "</groupId>\n  <artifactId>"
+            + artifactId + "</artifactId>\n  <version>" + DEPENDENCY_VERSION + "</version>\n</project>\n" );
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put( Attributes.Name.MANIFEST_VERSION, "1.0" );
+        File tmp = new File( base, jar.getName() + ".tmp" );
+        JarOutputStream out = new JarOutputStream( new FileOutputStream( tmp ), manifest );
+        try
+        {
+            // a chain of classes in a package of its own, so loading the component loads all of them and none is
+            // shadowed by another jar.
+            String superName = "java/lang/Object";
+            for ( int i = 0; i < CLASSES_PER_DEPENDENCY; i++ )
+            {
+                String name = getClassName( idx, i );
+                out.putNextEntry( new ZipEntry( name + ".class" ) );
+                out.write( writeClass( name, superName ) );
+                out.closeEntry();
+                superName = name;
+            }
+
+            String component = getComponent( idx );
+            out.putNextEntry( new ZipEntry( "META-INF/plexus/components.xml" ) );
+            out.write( ( "<component-set>\n  <components>\n    <component>\n      <role>" + component
+                + "</role>\n      <implementation>" + component
+                + "</implementation>\n    </component>\n  </components>\n</component-set>\n" ).getBytes( "UTF-8" ) );
+            out.closeEntry();
+        }
+        finally
+        {
+            out.close();
+        }
+        if ( !tmp.renameTo( jar ) )
+        {
+            throw new IOException( "Cannot write: " + jar );
+        }
+    }
+
+    private static String getClassName( int dependency, int idx )
+    {
+        return "plx/benchmark/dep" + dependency + "/Type" + idx;
+    }
+
+    /**
+     * @return the component of a dependency: the last class of its chain.
+     */
+    private static String getComponent( int dependency )
+    {
+        return getClassName( dependency, CLASSES_PER_DEPENDENCY - 1 ).replace( '/', '.' );
+    }
+
+    /**
+     * @return a public Java 5 class file with only a default constructor.
+     */
+    private static byte[] writeClass( String name, String superName )
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream( bytes );
+        out.writeInt( 0xCAFEBABE );
+        out.writeShort( 0 );
+        out.writeShort( 49 );
+
+        out.writeShort( 10 );
+        out.writeByte( 1 ); // #1 this class name
+        out.writeUTF( name );
+        out.writeByte( 7 ); // #2 this class
+        out.writeShort( 1 );
+        out.writeByte( 1 ); // #3 super class name
+        out.writeUTF( superName );
+        out.writeByte( 7 ); // #4 super class
+        out.writeShort( 3 );
+        out.writeByte( 1 ); // #5
+        out.writeUTF( "<init>" );
+        out.writeByte( 1 ); // #6
+        out.writeUTF( "()V" );
+        out.writeByte( 12 ); // #7 <init>()V
+        out.writeShort( 5 );
+        out.writeShort( 6 );
+        out.writeByte( 10 ); // #8 super class constructor
+        out.writeShort( 4 );
+        out.writeShort( 7 );
+        out.writeByte( 1 ); // #9
+        out.writeUTF( "Code" );
+
+        out.writeShort( 0x0021 ); // public, super
+        out.writeShort( 2 );
+        out.writeShort( 4 );
+        out.writeShort( 0 ); // interfaces
+        out.writeShort( 0 ); // fields
+
+        out.writeShort( 1 ); // methods
+        out.writeShort( 0x0001 ); // public
+        out.writeShort( 5 );
+        out.writeShort( 6 );
+        out.writeShort( 1 );
+        out.writeShort( 9 );
+        out.writeInt( 17 );
+        out.writeShort( 1 ); // max stack
+        out.writeShort( 1 ); // max locals
+        out.writeInt( 5 );
+        out.writeByte( 0x2a ); // aload_0
+        out.writeByte( 0xb7 ); // invokespecial #8
+        out.writeShort( 8 );
+        out.writeByte( 0xb1 ); // return
+        out.writeShort( 0 ); // exception table
+        out.writeShort( 0 ); // code attributes
+
+        out.writeShort( 0 ); // class attributes
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private void writeProject( File project, File repository, int dependencies )
+        throws IOException
+    {
+        StringBuilder pom = new StringBuilder();
+        pom.append( "<project>\n  <modelVersion>4.0.0</modelVersion>\n" );
+        pom.append( "  <groupId>" ).append( GROUP_ID ).append( "</groupId>\n" );
+        pom.append( "  <artifactId>app-" ).append( dependencies ).append( "</artifactId>\n" );
+        pom.append( "  <version>1.0-SNAPSHOT</version>\n" );
+        pom.append( "  <repositories>\n    <repository>\n      <id>plx-benchmark</id>\n" );
+        pom.append( "      <url>" ).append( repository.toURI() ).append( "</url>\n" );
+        pom.append( "    </repository>\n  </repositories>\n  <dependencies>\n" );
+        for ( int i = 0; i < dependencies; i++ )
+        {
+            pom.append( "    <dependency>\n      <groupId>" ).append( GROUP_ID ).append( "</groupId>\n" );
+            pom.append( "      <artifactId>dep-" ).append( i ).append( "</artifactId>\n" );
+            pom.append( "      <version>" ).append( DEPENDENCY_VERSION ).append( "</version>\n    </dependency>\n" );
+        }
+        pom.append( "  </dependencies>\n</project>\n" );
+
+        mkdirs( new File( project, "src/main/plexus" ) );
+        write( new File( project, "pom.xml" ), pom.toString() );
+
+        // start every dependency's component with the container, so their classes are loaded before it's ready.
+        StringBuilder plexus = new StringBuilder( "<plexus>\n  <load-on-start>\n" );
+        for ( int i = 0; i < dependencies; i++ )
+        {
+            plexus.append( "    <component>\n      <role>" ).append( getComponent( i ) ).append( "</role>\n" );
+            plexus.append( "    </component>\n" );
+        }
+        plexus.append( "  </load-on-start>\n</plexus>\n" );
+        write( new File( project, "src/main/plexus/plexus.xml" ), plexus.toString() );
+    }
+
+    /**
+     * Run a command, writing its output to the log file.
+     *
+     * @return the exit code.
+     */
+    private static int execute( File log, String... command )
+        throws IOException, InterruptedException
+    {
+        ProcessBuilder builder = new ProcessBuilder( command );
+        builder.directory( log.getParentFile() );
+        builder.redirectErrorStream( true );
+        Process process = builder.start();
+        process.getOutputStream().close();
+
+        InputStream in = process.getInputStream();
+        OutputStream out = new FileOutputStream( log );
+        try
+        {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ( ( read = in.read( buffer ) ) > -1 )
+            {
+                out.write( buffer, 0, read );
+            }
+        }
+        finally
+        {
+            out.close();
+            in.close();
+        }
+        return process.waitFor();
+    }
+
+    /**
+     * Print the results, with the relative difference to the baseline where it has the same value.
+     */
+    private static void print( Properties results, Properties baseline )
+    {
+        if ( baseline != null )
+        {
+            System.out.println( "Baseline: plugin version " + baseline.getProperty( "version" ) );
+        }
+
+        for ( Object key : new TreeSet<Object>( results.keySet() ) )
+        {
+            String name = (String) key;
+            if ( !Character.isDigit( name.charAt( 0 ) ) )
+            {
+                continue;
+            }
+
+            long value = Long.parseLong( results.getProperty( name ) );
+            StringBuilder line = new StringBuilder( String.format( "%-40s %10d", name, Long.valueOf( value ) ) );
+            String old = baseline == null ? null : baseline.getProperty( name );
+            if ( old != null )
+            {
+                long before = Long.parseLong( old );
+                line.append( String.format( " %10d", Long.valueOf( before ) ) );
+                if ( before > 0 )
+                {
+                    line.append( String.format( " %+6d%%", Long.valueOf( ( value - before ) * 100 / before ) ) );
+                }
+            }
+            System.out.println( line );
+        }
+    }
+
+    private static long median( List<Long> values )
+    {
+        Long[] sorted = values.toArray( new Long[values.size()] );
+        Arrays.sort( sorted );
+        return sorted[sorted.length / 2].longValue();
+    }
+
+    private static Properties load( File file )
+        throws IOException
+    {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream( file );
+        try
+        {
+            properties.load( in );
+        }
+        finally
+        {
+            in.close();
+        }
+        return properties;
+    }
+
+    private static String read( File file )
+        throws IOException
+    {
+        InputStream in = new FileInputStream( file );
+        try
+        {
+            byte[] bytes = new byte[(int) file.length()];
+            int off = 0;
+            int read;
+            while ( off < bytes.length && ( read = in.read( bytes, off, bytes.length - off ) ) > -1 )
+            {
+                off += read;
+            }
+            return new String( bytes, 0, off, "UTF-8" );
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static void write( File file, String content )
+        throws IOException
+    {
+        Writer writer = new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" );
+        try
+        {
+            writer.write( content );
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    private static void mkdirs( File dir )
+        throws IOException
+    {
+        if ( !dir.isDirectory() && !dir.mkdirs() )
+        {
+            throw new IOException( "Cannot create directory: " + dir );
+        }
+    }
+
+}